@@ -6,9 +6,21 @@ package amazons;
  * file is sacred.
  * If any of it confuses you, throw it out and do it your way. */
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
 import static java.lang.Math.*;
 
 import static amazons.Piece.*;
+import static amazons.Move.mv;
+import static amazons.Utils.error;
 import static amazons.Utils.iterable;
 
 /**
@@ -23,29 +35,191 @@ class AI extends Player {
      * if negative).
      */
     private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+    /**
+     * Base magnitude of a position known from the tablebase to be won.
+     */
+    private static final int TABLEBASE_WIN = WINNING_VALUE / 2;
     /**
      * A magnitude greater than a normal value.
      */
-    private static final int INFTY = Integer.MAX_VALUE;
+    static final int INFTY = Integer.MAX_VALUE;
 
     /**
      * A new AI with no piece or controller (intended to produce
      * a template).
      */
     AI() {
-        this(null, null);
+        this(false);
+    }
+
+    /**
+     * A new AI template with no piece or controller that uses split-ply
+     * search iff SPLITPLY.
+     */
+    AI(boolean splitPly) {
+        this(null, null, splitPly);
     }
 
     /**
      * A new AI playing PIECE under control of CONTROLLER.
      */
     AI(Piece piece, Controller controller) {
+        this(piece, controller, false);
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER, using split-ply
+     * search iff SPLITPLY.
+     */
+    AI(Piece piece, Controller controller, boolean splitPly) {
+        this(piece, controller, splitPly, new EvalCache());
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER, using split-ply
+     * search iff SPLITPLY, and caching its static scores in EVALCACHE.
+     */
+    private AI(Piece piece, Controller controller, boolean splitPly,
+               EvalCache evalCache) {
         super(piece, controller);
+        _splitPly = splitPly;
+        _evalCache = evalCache;
+        _clock = new TimeManager();
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        AI result = new AI(piece, controller, _splitPly, _evalCache);
+        result._searchPool = _searchPool;
+        result._tablebase = _tablebase;
+        result._evaluation = _evaluation;
+        result._sharedContext = _sharedContext;
+        result._context = _sharedContext;
+        result._contextBits = _contextBits;
+        result._cluster = _cluster;
+        result._nodeLimit = _nodeLimit;
+        result._clock = _clock.copy();
+        return result;
+    }
+
+    /**
+     * Use CLOCK's time limits for me and the AIs I create.
+     */
+    void setClock(TimeManager clock) {
+        _clock = clock;
+    }
+
+    /**
+     * Keep the search knowledge of the AIs I create in CONTEXT, so that it
+     * persists across their moves, games, and sides.  If CONTEXT is null,
+     * each AI I create gets a context of its own, which lasts across its
+     * moves.  AIs sharing a context must not search at the same time.
+     */
+    void setContext(EngineContext context) {
+        _sharedContext = context;
+        _context = context;
+    }
+
+    /**
+     * Give the contexts of their own that I and the AIs I create make
+     * (see setContext) transposition tables of 2**BITS entries.
+     */
+    void setContextBits(int bits) {
+        if (bits < 0 || bits > EngineContext.MAX_BITS) {
+            throw error("table size must be 2**0 to 2**%d entries",
+                        EngineContext.MAX_BITS);
+        }
+        _contextBits = bits;
+    }
+
+    /**
+     * Stop my searches (and those of the AIs I create) once they have
+     * examined about LIMIT positions, as well as when their time is up.
+     * The first iteration of a search always completes.
+     */
+    void setNodeLimit(long limit) {
+        _nodeLimit = limit;
+    }
+
+    /**
+     * Divide the root moves of my searches (and those of the AIs I
+     * create) among the worker processes of CLUSTER, or search them
+     * myself if CLUSTER is null.  AIs sharing a cluster must not search
+     * at the same time.
+     */
+    void setCluster(SearchCluster cluster) {
+        _cluster = cluster;
+    }
+
+    /**
+     * Return my search knowledge, creating it if necessary.
+     */
+    private EngineContext context() {
+        if (_context == null) {
+            _context = new EngineContext(_contextBits);
+        }
+        return _context;
+    }
+
+    /**
+     * Score positions with EVALUATION, both in me and in the AIs I
+     * create.
+     */
+    void setEvaluation(Evaluation evaluation) {
+        _evaluation = evaluation;
+        _evalCache = new EvalCache();
+    }
+
+    /**
+     * Score separated endgame positions exactly using TABLEBASE (if
+     * non-null), both in me and in the AIs I create.
+     */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
+        _evalCache = new EvalCache();
+    }
+
+    /**
+     * Return a number identifying the scores my searches produce, which
+     * depend on my evaluation and on whether I use a tablebase, so that
+     * a transposition table kept in a file is not reused with different
+     * ones (see EngineContext.map).
+     */
+    int fingerprint() {
+        return 31 * _evaluation.hashCode() + (_tablebase == null ? 0 : 1);
+    }
+
+    /**
+     * Return the cache of static scores that I share with the AIs I
+     * create (which use the same evaluation and tablebase).
+     */
+    EvalCache evalCache() {
+        return _evalCache;
+    }
+
+    /**
+     * Run my searches (and those of AIs I create) on POOL rather than on
+     * the thread that asks for a move, or on that thread if POOL is null.
+     * Sharing a bounded pool among many AIs limits the number of searches
+     * that compete for the CPU at any one time.
+     */
+    void setSearchPool(ExecutorService pool) {
+        _searchPool = pool;
+    }
+
+    @Override
+    String name() {
+        return _splitPly ? "AI(split)" : "AI(full)";
+    }
+
+    @Override
+    long lastNodes() {
+        return _nodes;
+    }
+
+    @Override
+    int lastDepth() {
+        return _depth;
     }
 
     /**
@@ -56,25 +230,344 @@ class AI extends Player {
      */
     @Override
     String myMove() {
-        Move move = findMove();
+        return myMove(new AtomicBoolean());
+    }
+
+    @Override
+    String myMove(AtomicBoolean cancelled) {
+        long start = System.nanoTime();
+        _cancelled = cancelled;
+        Move move;
+        if (_searchPool == null) {
+            move = findMove(start);
+        } else {
+            try {
+                move = _searchPool.submit(() -> findMove(start)).get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+        if (move == null) {
+            return null;
+        }
         _controller.reportMove(move);
         return move.toString();
     }
 
+    @Override
+    boolean isAutomatic() {
+        return true;
+    }
+
     /**
      * Return a move for me from the current position, assuming there
-     * is a move.
+     * is a move, timing it from START (as from System.nanoTime).
+     * Returns null if the search is cancelled.
+     */
+    private Move findMove(long start) {
+        return chooseMove(board(), null, start);
+    }
+
+    /**
+     * Return a move for the side to move on BOARD, which must not be
+     * modified meanwhile, assuming there is a move.  Searches to
+     * successively greater depths until my clock (or node limit) says to
+     * stop, and returns the move found by the deepest search that
+     * finished, passing it and its depth to LISTENER (if not null) after
+     * each iteration.  Returns null if the search is cancelled.
+     */
+    Move chooseMove(Board board, ObjIntConsumer<Move> listener) {
+        return chooseMove(board, listener, System.nanoTime());
+    }
+
+    /**
+     * As for chooseMove(BOARD, LISTENER), but charging my clock for the
+     * time since START (as from System.nanoTime), when the move began.
+     */
+    private Move chooseMove(Board board, ObjIntConsumer<Move> listener,
+                            long start) {
+        boolean recording = Events.enabled();
+        Events.Search event = recording ? new Events.Search() : null;
+        if (recording) {
+            event.begin();
+        }
+        int sense = board.turn() == WHITE ? 1 : -1;
+        _nodes = 0;
+        _clock.startMove(board, start);
+        context().newSearch(board.numMoves());
+        Move best = null;
+        int[] roots = _cluster == null ? null : rootMoves(board);
+        int[] scores = roots == null ? null : new int[roots.length];
+        try {
+            for (int depth = 1; depth <= MAX_DEPTH; depth += 1) {
+                Events.Iteration iteration =
+                    recording ? new Events.Iteration() : null;
+                if (recording) {
+                    iteration.begin();
+                }
+                _abortable = best != null;
+                if (roots == null) {
+                    search(board.snapshot(), depth, true, sense, -INFTY,
+                           INFTY);
+                } else {
+                    clusterSearch(board, roots, scores, depth, sense);
+                }
+                boolean changed = _lastFoundMove != best;
+                best = _lastFoundMove;
+                _depth = depth;
+                if (recording) {
+                    iteration.end();
+                    if (iteration.shouldCommit()) {
+                        iteration.depth = depth;
+                        iteration.nodes = _nodes;
+                        iteration.move = String.valueOf(best);
+                        iteration.changed = changed;
+                        iteration.commit();
+                    }
+                }
+                if (listener != null) {
+                    listener.accept(best, depth);
+                }
+                if (!_clock.keepSearching(changed) || _nodes >= _nodeLimit) {
+                    break;
+                }
+            }
+        } catch (Timeout excp) {
+            /* Use the result of the last complete iteration. */
+        }
+        _clock.endMove();
+        if (recording) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.side = board.turn().toName();
+                event.size = board.size();
+                event.depth = _depth;
+                event.nodes = _nodes;
+                event.move = String.valueOf(best);
+                event.commit();
+            }
+        }
+        return _cancelled.get() ? null : best;
+    }
+
+    /**
+     * Analyze BOARD, which must not be modified meanwhile, searching to
+     * successively greater depths until my clock says to stop.  After
+     * each complete iteration, passes LISTENER the best K (or all, if
+     * fewer) moves for the side to move, best first, each with its value
+     * and principal variation; lastDepth() then gives the depth of the
+     * iteration.  Returns the last list passed to LISTENER, which is
+     * empty if the game is over.  Unlike a normal search, every legal
+     * move is considered at the root; later iterations search the root
+     * moves in the order found by the previous one.
+     */
+    List<Variation> analyze(Board board, int k,
+                            Consumer<List<Variation>> listener) {
+        int sense = board.turn() == WHITE ? 1 : -1;
+        List<Variation> result = Collections.emptyList();
+        if (board.winner() != null) {
+            return result;
+        }
+        int[] roots = rootMoves(board);
+        int numRoots = roots.length;
+        int[] scores = new int[numRoots];
+        _nodes = 0;
+        _clock.startMove(board);
+        context().newSearch(board.numMoves());
+        try {
+            for (int depth = 1; depth <= MAX_DEPTH; depth += 1) {
+                _abortable = !result.isEmpty();
+                List<Variation> lines =
+                    analyzeIteration(board.snapshot(), roots, scores,
+                                     numRoots, depth, k, sense);
+                boolean changed = result.isEmpty()
+                    || lines.get(0).move() != result.get(0).move();
+                result = lines;
+                _depth = depth;
+                listener.accept(result);
+                if (!_clock.keepSearching(changed) || _nodes >= _nodeLimit) {
+                    break;
+                }
+            }
+        } catch (Timeout excp) {
+            /* Keep the result of the last complete iteration. */
+        }
+        _clock.endMove();
+        return result;
+    }
+
+    /**
+     * Return the indices of the legal moves from BOARD.
+     */
+    private static int[] rootMoves(Board board) {
+        return board.legalMoveStream().mapToInt(Move::index).toArray();
+    }
+
+    /**
+     * Search each of the moves in ROOTS (as Move indices) from BOARD to
+     * depth DEPTH on my cluster, where SENSE indicates the side to move
+     * as for findMove, recording the best in _lastFoundMove and leaving
+     * the values (or bounds) found in SCORES.  Reorders ROOTS and SCORES
+     * best first, so that the next iteration searches the most promising
+     * moves first.  Abandons the search (by throwing TIMEOUT) if it is
+     * cancelled, or if it may be abandoned and its time is up.
+     */
+    private void clusterSearch(Board board, int[] roots, int[] scores,
+                               int depth, int sense) {
+        int best = _cluster.search(board, depth, _splitPly, roots, scores,
+                                   () -> _cancelled.get()
+                                   || _abortable && _clock.outOfTime());
+        _nodes += _cluster.lastNodes();
+        if (best < 0) {
+            throw TIMEOUT;
+        }
+        int bestMove = roots[best];
+        selectBest(roots, scores, roots.length, roots.length, sense);
+        moveToFront(roots, roots.length, bestMove);
+        _lastFoundMove = mv(bestMove);
+    }
+
+    /**
+     * Prepare my search knowledge for a series of calls of scoreMove from
+     * BOARD.
+     */
+    void prepare(Board board) {
+        context().newSearch(board.numMoves());
+    }
+
+    /**
+     * Return the value of MOVE from BOARD found by a search of BOARD to
+     * depth DEPTH with window ALPHA..BETA (as for findMove) that
+     * considers only MOVE at its root, or NO_SCORE if CANCELLED is set
+     * first.  lastNodes() then gives the number of positions examined.
      */
-    private Move findMove() {
-        Board b = new Board(board());
-        if (_myPiece == WHITE) {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
+    int scoreMove(Board board, Move move, int depth, int alpha, int beta,
+                  AtomicBoolean cancelled) {
+        _cancelled = cancelled;
+        _abortable = false;
+        _nodes = 0;
+        Board next = board.snapshot();
+        next.makeMove(move);
+        try {
+            return search(next, depth - 1, false,
+                          next.turn() == WHITE ? 1 : -1, alpha, beta);
+        } catch (Timeout excp) {
+            return NO_SCORE;
+        }
+    }
+
+    /**
+     * Search each of the first N moves in ROOTS (as Move indices) from
+     * BOARD to depth DEPTH, where SENSE indicates the side to move as for
+     * findMove, and return the best K as Variations, best first.  Moves
+     * that cannot be among the best K are only searched enough to show
+     * this.  Leaves the values (or bounds) found in SCORES and reorders
+     * ROOTS and SCORES best first.
+     */
+    private List<Variation> analyzeIteration(Board board, int[] roots,
+                                             int[] scores, int n,
+                                             int depth, int k, int sense) {
+        k = min(k, n);
+        int[] best = new int[k], bestScores = new int[k];
+        int numBest = 0;
+        for (int i = 0; i < n; i += 1) {
+            int bound = numBest < k ? -sense * INFTY : bestScores[k - 1];
+            board.makeMove(mv(roots[i]));
+            scores[i] = sense == 1
+                ? search(board, depth - 1, false, -1, bound, INFTY)
+                : search(board, depth - 1, false, 1, -INFTY, bound);
+            board.undo();
+            if (numBest < k || better(scores[i], bound, sense)) {
+                int j = min(numBest, k - 1);
+                for (; j > 0 && better(scores[i], bestScores[j - 1], sense);
+                     j -= 1) {
+                    best[j] = best[j - 1];
+                    bestScores[j] = bestScores[j - 1];
+                }
+                best[j] = roots[i];
+                bestScores[j] = scores[i];
+                numBest = min(numBest + 1, k);
+            }
+        }
+        selectBest(roots, scores, n, n, sense);
+        List<Variation> result = new ArrayList<>();
+        for (int i = 0; i < numBest; i += 1) {
+            result.add(new Variation(bestScores[i],
+                                     principalVariation(board, mv(best[i]),
+                                                        depth)));
+        }
+        return result;
+    }
+
+    /**
+     * Return the line of play from BOARD that starts with MOVE and
+     * continues with the moves found by searches of decreasing depth,
+     * for a total of at most DEPTH moves.  If the search is abandoned
+     * part way, returns the line found so far, so that the completed
+     * iteration that called me is not lost.
+     */
+    private List<Move> principalVariation(Board board, Move move,
+                                          int depth) {
+        List<Move> result = new ArrayList<>();
+        Board b = board.snapshot();
+        b.makeMove(move);
+        result.add(move);
+        try {
+            for (int d = depth - 1; d > 0 && b.winner() == null; d -= 1) {
+                search(b.snapshot(), d, true, b.turn() == WHITE ? 1 : -1,
+                       -INFTY, INFTY);
+                result.add(_lastFoundMove);
+                b.makeMove(_lastFoundMove);
+            }
+        } catch (Timeout excp) {
+            /* Return the line as far as it goes. */
+        }
+        return result;
+    }
+
+    /**
+     * As for findMove(BOARD, DEPTH, SAVEMOVE, SENSE, ALPHA, BETA), but
+     * using my chosen search.
+     */
+    private int search(Board board, int depth, boolean saveMove, int sense,
+                       int alpha, int beta) {
+        if (_splitPly) {
+            return findSplitMove(board, depth, saveMove, sense, alpha, beta);
         } else {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
+            return findMove(board, depth, saveMove, sense, alpha, beta);
+        }
+    }
+
+    /**
+     * Count a node of the current search and abandon the search (by
+     * throwing TIMEOUT) if it has been cancelled, or if it may be
+     * abandoned and its time or its node limit is up.
+     */
+    private void tick() {
+        _nodes += 1;
+        if ((_nodes & CLOCK_CHECK_MASK) == 0
+            && (_cancelled.get() || _abortable && (_nodes >= _nodeLimit
+                                                   || _clock.outOfTime()))) {
+            throw TIMEOUT;
         }
-        return _lastFoundMove;
     }
 
+    /**
+     * Thrown to abandon a search whose time has run out.
+     */
+    private static class Timeout extends RuntimeException {
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** The (only) Timeout. */
+        Timeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** The exception used to abandon searches. */
+    private static final Timeout TIMEOUT = new Timeout();
+
     /**
      * The move found by the last call to one of the ...FindMove methods
      * below.
@@ -91,9 +584,18 @@ class AI extends Player {
      */
     private int findMove(Board board, int depth, boolean saveMove, int sense,
                          int alpha, int beta) {
+        tick();
         if (depth == 0 || board.winner() != null) {
             return staticScore(board);
         }
+        long hash = board.canonicalHash();
+        if (!saveMove) {
+            int known = tableScore(hash, depth, alpha, beta);
+            if (known != NO_SCORE) {
+                return known;
+            }
+        }
+        int alpha0 = alpha, beta0 = beta;
         Board bestSoFarMax = new Board();
         bestSoFarMax.setValue(-INFTY);
         Board bestSoFarMin = new Board();
@@ -106,7 +608,7 @@ class AI extends Player {
                 board.undo();
                 int response = findMove(next, depth - 1,
                         false, -1, alpha, beta);
-                if (response >= bestSoFarMax.value()) {
+                if (response > bestSoFarMax.value()) {
                     bestSoFarMax = next;
                     next.setValue(response);
                     alpha = max(alpha, response);
@@ -116,8 +618,10 @@ class AI extends Player {
                 }
             }
             if (saveMove) {
-                _lastFoundMove = bestSoFarMax.moves().pop();
+                _lastFoundMove = bestSoFarMax.lastMove();
             }
+            record(board, depth, bestSoFarMax.value(), alpha0, beta0,
+                   bestSoFarMax.lastMove());
             return bestSoFarMax.value();
         } else {
             for (Move m : iterable(board.legalMoves(BLACK))) {
@@ -125,7 +629,7 @@ class AI extends Player {
                 next = new Board(board);
                 board.undo();
                 int response = findMove(next, depth - 1, false, 1, alpha, beta);
-                if (response <= bestSoFarMin.value()) {
+                if (response < bestSoFarMin.value()) {
                     bestSoFarMin = next;
                     next.setValue(response);
                     beta = min(beta, response);
@@ -135,21 +639,233 @@ class AI extends Player {
                 }
             }
             if (saveMove) {
-                _lastFoundMove = bestSoFarMin.moves().pop();
+                _lastFoundMove = bestSoFarMin.lastMove();
             }
+            record(board, depth, bestSoFarMin.value(), alpha0, beta0,
+                   bestSoFarMin.lastMove());
             return bestSoFarMin.value();
         }
     }
 
     /**
-     * Return a heuristically determined maximum search depth based
-     * on characteristics of BOARD.
+     * As for findMove(BOARD, DEPTH, SAVEMOVE, SENSE, ALPHA, BETA), but
+     * treats the amazon move and the spear throw as separate half-plies.
+     * Only the QUEEN_WIDTH most promising amazon moves (by a cheap
+     * evaluation of the position after the amazon has moved) are
+     * considered, and under each of them only the SPEAR_WIDTH most
+     * promising spear throws, so that a node has tens rather than
+     * thousands of children.  The amazon moves kept are searched in order
+     * of their history counts, and the best move recorded for the
+     * position by an earlier search (if any) is searched first.
+     */
+    private int findSplitMove(Board board, int depth, boolean saveMove,
+                              int sense, int alpha, int beta) {
+        tick();
+        if (depth == 0 || board.winner() != null) {
+            return staticScore(board);
+        }
+        long hash = board.canonicalHash();
+        if (!saveMove) {
+            int known = tableScore(hash, depth, alpha, beta);
+            if (known != NO_SCORE) {
+                return known;
+            }
+        }
+        Move hashMove = EngineContext.move(context().probe(hash));
+        if (hashMove != null) {
+            hashMove = Symmetry.apply(
+                Symmetry.inverse(board.canonicalSymmetry()), hashMove,
+                board.size());
+        }
+        int alpha0 = alpha, beta0 = beta;
+        Piece side = sense == 1 ? WHITE : BLACK;
+        int[] steps = new int[MAX_HALF_MOVES], stepScores =
+            new int[MAX_HALF_MOVES];
+        int numSteps = 0;
+        for (int a = 0; a < board.numAmazons(side); a += 1) {
+            Square from = board.amazon(side, a);
+            for (Square to : iterable(board.reachableFrom(from, null))) {
+                if (numSteps == steps.length) {
+                    steps = Arrays.copyOf(steps, 2 * numSteps);
+                    stepScores = Arrays.copyOf(stepScores, 2 * numSteps);
+                }
+                board.put(EMPTY, from);
+                board.put(side, to);
+                steps[numSteps] = from.index() * SQUARES + to.index();
+                stepScores[numSteps] = mobility(board);
+                numSteps += 1;
+                board.put(EMPTY, to);
+                board.put(side, from);
+            }
+        }
+        numSteps = selectBest(steps, stepScores, numSteps, QUEEN_WIDTH,
+                              sense);
+        orderByHistory(steps, numSteps, side);
+        if (hashMove != null) {
+            moveToFront(steps, numSteps,
+                        hashMove.from().index() * SQUARES
+                        + hashMove.to().index());
+        }
+
+        int[] spears = new int[SQUARES], spearScores = new int[SQUARES];
+        int best = sense == 1 ? -INFTY : INFTY;
+        Move bestMove = null;
+        for (int i = 0; i < numSteps && alpha < beta; i += 1) {
+            Square from = Square.sq(steps[i] / SQUARES),
+                to = Square.sq(steps[i] % SQUARES);
+            board.put(EMPTY, from);
+            board.put(side, to);
+            int numSpears = 0;
+            for (Square spear : iterable(board.reachableFrom(to, null))) {
+                board.put(SPEAR, spear);
+                spears[numSpears] = spear.index();
+                spearScores[numSpears] = mobility(board);
+                numSpears += 1;
+                board.put(EMPTY, spear);
+            }
+            board.put(EMPTY, to);
+            board.put(side, from);
+            numSpears = selectBest(spears, spearScores, numSpears,
+                                   SPEAR_WIDTH, sense);
+            if (hashMove != null && hashMove.from() == from
+                && hashMove.to() == to) {
+                moveToFront(spears, numSpears, hashMove.spear().index());
+            }
+
+            for (int k = 0; k < numSpears; k += 1) {
+                Move m = mv(from, to, Square.sq(spears[k]));
+                board.makeMove(m);
+                int response = findSplitMove(board, depth - 1, false,
+                                             -sense, alpha, beta);
+                board.undo();
+                if (bestMove == null || better(response, best, sense)) {
+                    best = response;
+                    bestMove = m;
+                    if (sense == 1) {
+                        alpha = max(alpha, response);
+                    } else {
+                        beta = min(beta, response);
+                    }
+                    if (beta <= alpha) {
+                        context().addHistory(side, from, to, depth);
+                        break;
+                    }
+                }
+            }
+        }
+        if (saveMove) {
+            _lastFoundMove = bestMove;
+        }
+        record(board, depth, best, alpha0, beta0, bestMove);
+        return best;
+    }
+
+    /**
+     * Return the score recorded in my transposition table for the
+     * position with hash HASH if it settles a search of that position to
+     * depth DEPTH with window ALPHA..BETA, and NO_SCORE otherwise.
+     */
+    private int tableScore(long hash, int depth, int alpha, int beta) {
+        long entry = context().probe(hash);
+        if (entry == EngineContext.NONE
+            || EngineContext.depth(entry) < depth) {
+            return NO_SCORE;
+        }
+        int score = EngineContext.score(entry);
+        switch (EngineContext.bound(entry)) {
+        case EngineContext.EXACT:
+            return score;
+        case EngineContext.LOWER:
+            return score >= beta ? score : NO_SCORE;
+        default:
+            return score <= alpha ? score : NO_SCORE;
+        }
+    }
+
+    /**
+     * Record in my transposition table that a search of the position on
+     * BOARD to depth DEPTH with window ALPHA0..BETA0 found the value SCORE
+     * and the best move BEST.  Positions are recorded in the orientation
+     * given by Board.canonicalSymmetry, so that the entry serves all the
+     * images of the position under the symmetries of the board.
      */
-    private int maxDepth(Board board) {
-        int N = board.numMoves();
-        return (N + FACTOR) / FACTOR;
+    private void record(Board board, int depth, int score, int alpha0,
+                        int beta0, Move best) {
+        int bound = score <= alpha0 ? EngineContext.UPPER
+            : score >= beta0 ? EngineContext.LOWER : EngineContext.EXACT;
+        if (best != null) {
+            best = Symmetry.apply(board.canonicalSymmetry(), best,
+                                  board.size());
+        }
+        context().store(board.canonicalHash(), depth, bound, score, best);
     }
 
+    /**
+     * Stably reorder the first N entries of STEPS (amazon moves of SIDE,
+     * encoded as from * SQUARES + to) in decreasing order of their
+     * history counts.
+     */
+    private void orderByHistory(int[] steps, int n, Piece side) {
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int step = steps[i],
+                count = context().history(side, Square.sq(step / SQUARES),
+                                          Square.sq(step % SQUARES));
+            int j = i;
+            for (; j > 0 && counts[j - 1] < count; j -= 1) {
+                steps[j] = steps[j - 1];
+                counts[j] = counts[j - 1];
+            }
+            steps[j] = step;
+            counts[j] = count;
+        }
+    }
+
+    /**
+     * If ITEM is among the first N entries of ITEMS, move it to the front,
+     * keeping the others in order.
+     */
+    private static void moveToFront(int[] items, int n, int item) {
+        for (int i = 0; i < n; i += 1) {
+            if (items[i] == item) {
+                System.arraycopy(items, 0, items, 1, i);
+                items[0] = item;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reorder the first N entries of ITEMS and their SCORES so that the
+     * first min(N, K) of them are the best for the side indicated by SENSE
+     * (highest scores first if SENSE==1, lowest first if SENSE==-1), in
+     * order. Returns min(N, K).
+     */
+    private static int selectBest(int[] items, int[] scores, int n, int k,
+                                  int sense) {
+        k = min(n, k);
+        for (int i = 0; i < k; i += 1) {
+            int b = i;
+            for (int j = i + 1; j < n; j += 1) {
+                if (better(scores[j], scores[b], sense)) {
+                    b = j;
+                }
+            }
+            int t = items[i]; items[i] = items[b]; items[b] = t;
+            t = scores[i]; scores[i] = scores[b]; scores[b] = t;
+        }
+        return k;
+    }
+
+    /**
+     * Return true iff the value A is better than B for the side indicated
+     * by SENSE (as for findMove).  The values are compared directly,
+     * since their difference may overflow when either is a win or
+     * INFTY.
+     */
+    static boolean better(int a, int b, int sense) {
+        return sense == 1 ? a > b : a < b;
+    }
 
     /**
      * Return a heuristic value for BOARD.
@@ -164,22 +880,124 @@ class AI extends Player {
         if (board.numMoves() == 0) {
             return 0;
         }
+        long hash = board.hash();
+        int result = _evalCache.probe(hash);
+        if (result != EvalCache.MISS) {
+            return result;
+        }
+        result = Tablebase.UNKNOWN;
+        if (_tablebase != null) {
+            result = _tablebase.probe(board, TABLEBASE_WIN,
+                                      _tablebaseScratch);
+        }
+        if (result == Tablebase.UNKNOWN) {
+            result = _evaluation.score(board);
+        }
+        _evalCache.store(hash, result);
+        return result;
+    }
+
+    /**
+     * Return the number of squares reachable by White's amazons on BOARD
+     * minus the number reachable by Black's.
+     */
+    private int mobility(Board board) {
+        if (board.size() <= Bitboard.MAX_SIZE) {
+            return Bitboard.mobility(board, WHITE)
+                - Bitboard.mobility(board, BLACK);
+        }
         int score = 0;
-        for (Square s : iterable(Square.iterator())) {
-            if (board.get(s) == WHITE) {
-                for (Square i : iterable(board.reachableFrom(s, null))) {
-                    score++;
-                }
-            } else if (board.get(s) == BLACK) {
-                for (Square i : iterable(board.reachableFrom(s, null))) {
-                    score--;
-                }
+        for (int k = 0; k < board.numAmazons(WHITE); k += 1) {
+            Square s = board.amazon(WHITE, k);
+            for (Square i : iterable(board.reachableFrom(s, null))) {
+                score++;
+            }
+        }
+        for (int k = 0; k < board.numAmazons(BLACK); k += 1) {
+            Square s = board.amazon(BLACK, k);
+            for (Square i : iterable(board.reachableFrom(s, null))) {
+                score--;
             }
         }
         return score;
     }
 
-    /** Decides when to increase depth of search tree.*/
-    private static final int FACTOR = 20;
+    /** A value that no search returns, indicating the absence of a
+     *  score. */
+    static final int NO_SCORE = Integer.MIN_VALUE;
+
+    /** Deepest search attempted. */
+    private static final int MAX_DEPTH = 64;
+
+    /** The clock is consulted once every CLOCK_CHECK_MASK + 1 nodes. */
+    private static final int CLOCK_CHECK_MASK = 255;
+
+    /** Number of squares on the board. */
+    private static final int SQUARES = Board.SIZE * Board.SIZE;
+
+    /** Upper bound on the number of amazon moves (ignoring spears) for one
+     *  side in a position with four amazons per side. */
+    private static final int MAX_HALF_MOVES = 4 * 4 * (Board.SIZE - 1);
+
+    /** Number of amazon moves searched at each node by split-ply search. */
+    private static final int QUEEN_WIDTH = 10;
+
+    /** Number of spear throws searched under each amazon move by split-ply
+     *  search. */
+    private static final int SPEAR_WIDTH = 6;
+
+    /** True iff I use split-ply search. */
+    private final boolean _splitPly;
+
+    /** Pool on which searches are run, or null to search on the calling
+     *  thread. */
+    private ExecutorService _searchPool;
+
+    /** Allocates my thinking time. */
+    private TimeManager _clock;
+
+    /** True iff the current search may be abandoned when time runs out. */
+    private boolean _abortable;
+
+    /** Set to cancel the current search. */
+    private AtomicBoolean _cancelled = new AtomicBoolean();
+
+    /** Static evaluation function. */
+    private Evaluation _evaluation = Evaluation.DEFAULT;
+
+    /** Tablebase of small regions, or null if none. */
+    private Tablebase _tablebase;
+
+    /** Working storage for my tablebase probes. */
+    private final Tablebase.Scratch _tablebaseScratch =
+        new Tablebase.Scratch();
+
+    /** Cache of the static scores of positions, shared with the AIs I
+     *  create. */
+    private EvalCache _evalCache;
+
+    /** Context shared by the AIs I create, or null if each gets its
+     *  own. */
+    private EngineContext _sharedContext;
+
+    /** My search knowledge, or null if not yet created. */
+    private EngineContext _context;
+
+    /** Log2 of the number of transposition-table entries in a context
+     *  I create for myself. */
+    private int _contextBits = EngineContext.DEFAULT_BITS;
+
+    /** Worker processes among which I divide my root moves, or null if I
+     *  search them all myself. */
+    private SearchCluster _cluster;
+
+    /** Number of positions examined by the last search. */
+    private long _nodes;
+
+    /** Number of positions after which a search stops. */
+    private long _nodeLimit = Long.MAX_VALUE;
+
+    /** Depth of the last search. */
+    private int _depth;
 
 }
@@ -0,0 +1,295 @@
+package amazons;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static amazons.Utils.error;
+
+import ucb.util.CommandArgs;
+
+/** Measures the strength and speed of the AI on a suite of positions.
+ *  Each line of a suite file (ignoring '#' comments and blank lines) has
+ *  the form
+ *      NAME POSITION TURN [MOVE ...]
+ *  where POSITION TURN is a position in the form of Board.position, and
+ *  the MOVEs are the moves that solve it (for example, all the winning
+ *  moves).  A position with no MOVEs is searched only for its speed.
+ *  The AI searches each position with a fresh transposition table and a
+ *  fixed budget of time (and optionally of positions examined).  A
+ *  position is solved if the AI's final choice is one of its MOVEs; its
+ *  time to solution is the time at which the AI last switched to a
+ *  solving move.  The report gives, for each position and in total, the
+ *  positions solved, times to solution, and positions searched per
+ *  second (NPS), and the hit rate of the AI's evaluation cache.  A
+ *  report can be saved and later given as a baseline, so that a new
+ *  version of the AI can be compared with an old one.
+ *  @author Dayuan Tang
+ */
+class Benchmark {
+
+    /** Default suite file (relative to the source directory). */
+    private static final String DEFAULT_SUITE = "../testing/benchmark.suite";
+
+    /** Default time per position, in seconds. */
+    private static final String DEFAULT_TIME = "1";
+
+    /** Time per position when only a node budget is given, in seconds. */
+    private static final String NODES_ONLY_TIME = "3600";
+
+    /** Milliseconds per second. */
+    private static final double MILLIS = 1000;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS = 1000000;
+
+    /** Run the suite described by ARGS:
+     *      --suite=FILE      positions to search
+     *      --time=SECONDS    time per position
+     *      --nodes=N         positions examined per position
+     *      --split           use split-ply search
+     *      --weights=FILE    evaluation weights, as written by Tuner
+     *      --save=FILE       write the results to FILE
+     *      --baseline=FILE   compare with the results saved in FILE
+     */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--suite={0,1} --time={0,1} --nodes={0,1}"
+                            + " --split --weights={0,1} --save={0,1}"
+                            + " --baseline={0,1}", args);
+        if (!options.ok()) {
+            System.err.println("Usage: java amazons.Benchmark [--suite=FILE]"
+                               + " [--time=SECONDS] [--nodes=N] [--split]"
+                               + " [--weights=FILE] [--save=FILE]"
+                               + " [--baseline=FILE]");
+            System.exit(1);
+        }
+        try {
+            AI engine = new AI(options.contains("--split"));
+            if (options.contains("--weights")) {
+                engine.setEvaluation(Evaluation.load(
+                    Path.of(options.getFirst("--weights"))));
+            }
+            if (options.contains("--nodes")) {
+                engine.setNodeLimit(
+                    Long.parseLong(options.getFirst("--nodes")));
+            }
+            String time = option(options, "--time",
+                                 options.contains("--nodes")
+                                 ? NODES_ONLY_TIME : DEFAULT_TIME);
+            Benchmark bench =
+                new Benchmark(engine,
+                              (long) (Double.parseDouble(time) * MILLIS));
+            bench.run(Path.of(option(options, "--suite", DEFAULT_SUITE)),
+                      System.out);
+            if (options.contains("--baseline")) {
+                bench.compare(Path.of(options.getFirst("--baseline")),
+                              System.out);
+            }
+            if (options.contains("--save")) {
+                bench.save(Path.of(options.getFirst("--save")));
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the value of option NAME in OPTIONS, or DFLT if absent. */
+    private static String option(CommandArgs options, String name,
+                                 String dflt) {
+        return options.contains(name) ? options.getFirst(name) : dflt;
+    }
+
+    /** A benchmark of AIs created from ENGINE (for which I set the
+     *  clock), allowing them TIMELIMIT ms per position. */
+    Benchmark(AI engine, long timeLimit) {
+        _engine = engine;
+        _timeLimit = timeLimit;
+    }
+
+    /** Search each position of the suite in the file SUITE, printing a
+     *  report on OUT. */
+    void run(Path suite, PrintStream out) throws IOException {
+        _results.clear();
+        EvalCache cache = _engine.evalCache();
+        long hits0 = cache.hits(), misses0 = cache.misses();
+        out.printf("%-14s %-7s %9s %6s %12s %10s  %s%n", "position",
+                   "result", "time(ms)", "depth", "nodes", "nps", "move");
+        int lineNum = 0;
+        for (String line : Files.readAllLines(suite)) {
+            lineNum += 1;
+            line = line.replaceFirst("#.*", "").trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 3) {
+                throw error("%s:%d: bad suite line", suite, lineNum);
+            }
+            Board board = new Board();
+            board.setPosition(fields[1] + " " + fields[2]);
+            List<Move> solutions = new ArrayList<>();
+            for (int k = 3; k < fields.length; k += 1) {
+                Move move = Move.mv(fields[k]);
+                if (!board.isLegal(move)) {
+                    throw error("%s:%d: illegal move %s", suite, lineNum,
+                                fields[k]);
+                }
+                solutions.add(move);
+            }
+            if (board.winner() != null) {
+                throw error("%s:%d: game is over", suite, lineNum);
+            }
+            Result result = search(fields[0], board, solutions);
+            _results.add(result);
+            out.printf("%-14s %-7s %9s %6d %12d %10d  %s%n", result.name,
+                       result.scored ? (result.solved ? "solved" : "failed")
+                       : "-",
+                       result.solved ? "" + result.solveTime : "",
+                       result.depth, result.nodes, nps(result.nodes,
+                                                       result.time),
+                       result.move);
+        }
+        out.println(summary(_results));
+        long hits = cache.hits() - hits0, misses = cache.misses() - misses0;
+        out.printf("Evaluation cache: %d hits, %d misses (%d%% hits)%n",
+                   hits, misses, hits * 100 / Math.max(1, hits + misses));
+    }
+
+    /** Return the result of searching BOARD, the position named NAME,
+     *  which is solved by SOLUTIONS. */
+    private Result search(String name, Board board, List<Move> solutions) {
+        AI ai = (AI) _engine.create(board.turn(), null);
+        ai.setClock(new TimeManager(_timeLimit, Long.MAX_VALUE / 2));
+        Result result = new Result(name);
+        result.scored = !solutions.isEmpty();
+        long start = System.nanoTime();
+        Move move = ai.chooseMove(board, (best, depth) -> {
+            boolean solving = solutions.contains(best);
+            if (solving && !result.solved) {
+                result.solveTime = (System.nanoTime() - start) / NANOS;
+            }
+            result.solved = solving;
+            result.depth = depth;
+        });
+        result.time = (System.nanoTime() - start) / NANOS;
+        result.nodes = ai.lastNodes();
+        result.move = move;
+        return result;
+    }
+
+    /** Write the results of my last run to FILE, in the form read by
+     *  compare. */
+    void save(Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            out.println("# Amazons benchmark results: name scored solved"
+                        + " solve-time(ms) time(ms) nodes");
+            for (Result result : _results) {
+                out.printf("%s %d %d %d %d %d%n", result.name,
+                           result.scored ? 1 : 0, result.solved ? 1 : 0,
+                           result.solveTime, result.time, result.nodes);
+            }
+        }
+    }
+
+    /** Print on OUT a comparison of the results of my last run with those
+     *  saved (by save) in FILE. */
+    void compare(Path file, PrintStream out) throws IOException {
+        Map<String, Result> baseline = new HashMap<>();
+        List<Result> results = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.replaceFirst("#.*", "").trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 6) {
+                throw error("bad results line: %s", line);
+            }
+            Result result = new Result(fields[0]);
+            try {
+                result.scored = Integer.parseInt(fields[1]) != 0;
+                result.solved = Integer.parseInt(fields[2]) != 0;
+                result.solveTime = Long.parseLong(fields[3]);
+                result.time = Long.parseLong(fields[4]);
+                result.nodes = Long.parseLong(fields[5]);
+            } catch (NumberFormatException excp) {
+                throw error("bad results line: %s", line);
+            }
+            baseline.put(result.name, result);
+            results.add(result);
+        }
+        out.printf("Baseline: %s%n", summary(results));
+        for (Result result : _results) {
+            Result old = baseline.get(result.name);
+            if (old != null && old.solved != result.solved) {
+                out.printf("  %s: %s%n", result.name,
+                           result.solved ? "now solved" : "no longer solved");
+            }
+        }
+    }
+
+    /** Return a one-line summary of RESULTS. */
+    private static String summary(List<Result> results) {
+        int scored = 0, solved = 0;
+        long solveTime = 0, time = 0, nodes = 0;
+        for (Result result : results) {
+            scored += result.scored ? 1 : 0;
+            if (result.solved) {
+                solved += 1;
+                solveTime += result.solveTime;
+            }
+            time += result.time;
+            nodes += result.nodes;
+        }
+        return String.format("solved %d/%d, mean time to solution %d ms,"
+                             + " %d nodes in %.1f s (%d nodes/s)",
+                             solved, scored,
+                             solved == 0 ? 0 : solveTime / solved, nodes,
+                             time / MILLIS, nps(nodes, time));
+    }
+
+    /** Return the rate of examining NODES positions in TIME ms, in
+     *  positions per second. */
+    private static long nps(long nodes, long time) {
+        return time == 0 ? 0 : (long) (nodes * MILLIS / time);
+    }
+
+    /** The result of searching one position. */
+    private static class Result {
+        /** A result for the position named NAME. */
+        Result(String name) {
+            this.name = name;
+        }
+
+        /** Name of the position. */
+        final String name;
+        /** True iff the position has solving moves. */
+        boolean scored;
+        /** True iff the move chosen solves the position. */
+        boolean solved;
+        /** Time to solution, in ms. */
+        long solveTime;
+        /** Total search time, in ms. */
+        long time;
+        /** Positions examined. */
+        long nodes;
+        /** Depth of the last complete iteration. */
+        int depth;
+        /** Move chosen. */
+        Move move;
+    }
+
+    /** Template for the AIs that search the positions. */
+    private final AI _engine;
+    /** Time allowed per position, in ms. */
+    private final long _timeLimit;
+    /** Results of the last run, in suite order. */
+    private final List<Result> _results = new ArrayList<>();
+}
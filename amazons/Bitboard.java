@@ -0,0 +1,87 @@
+package amazons;
+
+/** Operations on bitboards: sets of squares of a board with at most
+ *  MAX_SIZE squares on a side, represented as a long with bit
+ *  col + MAX_SIZE * row set for each square (col, row) in the set.  They
+ *  give boards of MAX_SIZE and below fast, branch-light versions of the
+ *  operations that the search uses most: finding the squares reachable
+ *  from an amazon and deciding whether a side can move.
+ *  @author Dayuan Tang
+ */
+final class Bitboard {
+
+    /** The largest board side handled by bitboards. */
+    static final int MAX_SIZE = 8;
+
+    /** Squares not in the leftmost and rightmost columns, respectively. */
+    private static final long
+        NOT_LEFT = 0xfefefefefefefefeL,
+        NOT_RIGHT = 0x7f7f7f7f7f7f7f7fL;
+
+    /** Not instantiated. */
+    private Bitboard() {
+    }
+
+    /** Return the set of squares one step in direction DIR (as for
+     *  Square.queenMove) from the squares in SET. */
+    static long shift(long set, int dir) {
+        switch (dir) {
+        case 0:
+            return set << MAX_SIZE;
+        case 1:
+            return (set << (MAX_SIZE + 1)) & NOT_LEFT;
+        case 2:
+            return (set << 1) & NOT_LEFT;
+        case 3:
+            return (set >>> (MAX_SIZE - 1)) & NOT_LEFT;
+        case 4:
+            return set >>> MAX_SIZE;
+        case 5:
+            return (set >>> (MAX_SIZE + 1)) & NOT_RIGHT;
+        case 6:
+            return (set >>> 1) & NOT_RIGHT;
+        case 7:
+            return (set << (MAX_SIZE - 1)) & NOT_RIGHT;
+        default:
+            return 0;
+        }
+    }
+
+    /** Return the squares next to (including diagonally) any square in
+     *  SET. */
+    static long neighbors(long set) {
+        long result = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            result |= shift(set, dir);
+        }
+        return result;
+    }
+
+    /** Return the squares reachable by an unblocked queen move from the
+     *  squares in FROM, moving only through squares in EMPTY. */
+    static long reach(long from, long empty) {
+        long result = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            long ray = shift(from, dir) & empty;
+            while (ray != 0) {
+                result |= ray;
+                ray = shift(ray, dir) & empty;
+            }
+        }
+        return result;
+    }
+
+    /** Return the total number of squares reachable by queen moves from
+     *  each of the amazons of SIDE on BOARD, which must have at most
+     *  MAX_SIZE squares on a side. */
+    static int mobility(Board board, Piece side) {
+        long empty = board.bits(Piece.EMPTY);
+        int count = 0;
+        for (long amazons = board.bits(side); amazons != 0;
+             amazons &= amazons - 1) {
+            count += Long.bitCount(reach(Long.lowestOneBit(amazons),
+                                         empty));
+        }
+        return count;
+    }
+}
@@ -1,13 +1,20 @@
 package amazons;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.Arrays;
-import java.util.Stack;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static amazons.Piece.*;
 import static amazons.Move.mv;
+import static amazons.Utils.error;
 
 
 /** The state of an Amazons Game.
@@ -15,16 +22,28 @@ import static amazons.Move.mv;
  */
 class Board {
 
-    /** The number of squares on a side of the board. */
+    /** The largest number of squares on a side of the board. Squares
+     *  and Moves are defined for boards of this size; a smaller board
+     *  occupies the lower-left corner, and the squares outside it are
+     *  permanently blocked. */
     static final int SIZE = 10;
 
+    /** The smallest number of squares on a side of the board. */
+    static final int MIN_SIZE = 4;
+
     /** Structure to store the status/pieces of teh board.*/
     private Piece[][] boardSet;
 
     /** Initializes a game board with SIZE squares on a side in the
      *  initial position. */
     Board() {
-        init();
+        this(SIZE);
+    }
+
+    /** Initializes a game board with SIDE squares on a side (MIN_SIZE <=
+     *  SIDE <= SIZE) in the initial position. */
+    Board(int side) {
+        setSize(side);
     }
 
     /** Initializes a copy of MODEL. */
@@ -32,46 +51,163 @@ class Board {
         copy(model);
     }
 
-    /** Copies MODEL into me. */
+    /** Copies MODEL into me, including its move history.  Takes time
+     *  proportional to the size of the board (plus the length of the
+     *  history, which is bounded by it) and never modifies MODEL, so that
+     *  any number of threads may copy a board that is not being
+     *  changed. */
     void copy(Board model) {
-        init();
-        for (int i = 0; i < 100; i++) {
-            put(model.get(Square.sq(i)), Square.sq(i));
+        if (model == this) {
+            return;
+        }
+        Events.countBoardCopy();
+        if (boardSet == null) {
+            allocate();
+        }
+        for (int col = 0; col < SIZE; col += 1) {
+            System.arraycopy(model.boardSet[col], 0, boardSet[col], 0, SIZE);
         }
+        System.arraycopy(model._bits, 0, _bits, 0, _bits.length);
+        for (int p = 0; p < _amazons.length; p += 1) {
+            System.arraycopy(model._amazons[p], 0, _amazons[p], 0,
+                             model._numAmazons[p]);
+        }
+        System.arraycopy(model._numAmazons, 0, _numAmazons, 0,
+                         _numAmazons.length);
+        if (_history.length < model._numMoves) {
+            _history = new int[model._history.length];
+        }
+        System.arraycopy(model._history, 0, _history, 0, model._numMoves);
+        _numMoves = model._numMoves;
+        System.arraycopy(model._hashes, 0, _hashes, 0, Symmetry.NUM);
+        _symmetries = model._symmetries;
+        _size = model._size;
         _turn = model._turn;
         _winner = model._winner;
         _value = model._value;
-        Move[] moveArr = new Move[model.moves.size()];
-        int i = model.moves.size() - 1;
-        while (!model.moves.empty()) {
-            moveArr[i] = model.moves.pop();
-            i--;
-        }
-        for (int a = 0; a < moveArr.length; a++) {
-            moves.push(moveArr[a]);
-            model.moves.push(moveArr[a]);
-        }
+        publishReset();
+    }
+
+    /** Return a copy of me, as for copy(). */
+    Board snapshot() {
+        return new Board(this);
     }
 
-    /** Clears the board to the initial position. */
+    /** Allocate empty storage for my squares and piece sets. */
+    private void allocate() {
+        boardSet = new Piece[SIZE][SIZE];
+        _bits = new long[Piece.values().length];
+        _amazons = new Square[Piece.values().length][SIZE * SIZE];
+        _numAmazons = new int[Piece.values().length];
+    }
+
+    /** Clears the board to the initial position, with an empty move
+     *  history. On a board with N squares on a side, each side's amazons
+     *  start a third of the way along its edges, as on the standard 10x10
+     *  board. */
     void init() {
-        boardSet = new Piece[10][10];
-        for (Piece[] col : boardSet) {
-            Arrays.fill(col, EMPTY);
-        }
-        put(WHITE, 3, 0);
-        put(WHITE, 6, 0);
-        put(WHITE, 0, 3);
-        put(WHITE, 9, 3);
-        put(BLACK, 0, 6);
-        put(BLACK, 9, 6);
-        put(BLACK, 3, 9);
-        put(BLACK, 6, 9);
+        clear();
+        publishReset();
+    }
+
+    /** As for init(), but without telling my listeners. */
+    private void clear() {
+        allocate();
+        _bits[EMPTY.ordinal()] = -1L;
+        _numMoves = 0;
+        Arrays.fill(_hashes, 0);
+        _symmetries = Symmetry.map(_size);
+        for (int col = 0; col < SIZE; col += 1) {
+            for (int row = 0; row < SIZE; row += 1) {
+                boardSet[col][row] = EMPTY;
+                if (col >= _size || row >= _size) {
+                    put(SPEAR, col, row);
+                }
+            }
+        }
+        int near = (_size - 1) / 3, far = _size - 1 - near, edge = _size - 1;
+        put(WHITE, near, 0);
+        put(WHITE, far, 0);
+        put(WHITE, 0, near);
+        put(WHITE, edge, near);
+        put(BLACK, 0, far);
+        put(BLACK, edge, far);
+        put(BLACK, near, edge);
+        put(BLACK, far, edge);
         _turn = WHITE;
         _winner = EMPTY;
         _value = 0;
     }
 
+    /** Clears the board to the initial position on a board with SIDE
+     *  squares on a side. */
+    void setSize(int side) {
+        if (side < MIN_SIZE || side > SIZE) {
+            throw error("board size must be between %d and %d", MIN_SIZE,
+                        SIZE);
+        }
+        _size = side;
+        init();
+    }
+
+    /** Return the number of squares on a side of this board. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff S is on this board. */
+    boolean onBoard(Square s) {
+        return s.col() < _size && s.row() < _size;
+    }
+
+    /** Return a bitboard of the squares containing P, with bit
+     *  col + 8 * row for the square at (col, row).  Only meaningful if
+     *  size() <= Bitboard.MAX_SIZE. */
+    long bits(Piece p) {
+        return _bits[p.ordinal()];
+    }
+
+    /** Return the number of amazons of SIDE (WHITE or BLACK) on the
+     *  board. */
+    int numAmazons(Piece side) {
+        return _numAmazons[side.ordinal()];
+    }
+
+    /** Return the square of amazon K (0 <= K < numAmazons(SIDE)) of SIDE.
+     *  The amazons of a side are numbered in increasing order of square
+     *  index, so they are visited in the same order as by a scan of
+     *  Square.iterator(). */
+    Square amazon(Piece side, int k) {
+        return _amazons[side.ordinal()][k];
+    }
+
+    /** Return a 64-bit Zobrist hash of my position (contents and side
+     *  to move, but not history).  Equal positions have equal hashes, and
+     *  unequal ones almost always have unequal hashes. */
+    long hash() {
+        return _turn == BLACK ? _hashes[0] ^ BLACK_TO_MOVE : _hashes[0];
+    }
+
+    /** Return a hash of my position that is the same for all its images
+     *  under the symmetries of the board: the least of the hashes of
+     *  those images. */
+    long canonicalHash() {
+        long result = _hashes[canonicalSymmetry()];
+        return _turn == BLACK ? result ^ BLACK_TO_MOVE : result;
+    }
+
+    /** Return a symmetry that maps my position to the image whose hash
+     *  is canonicalHash(). */
+    int canonicalSymmetry() {
+        int result = 0;
+        for (int sym = 1; sym < Symmetry.NUM; sym += 1) {
+            if (_hashes[sym] < _hashes[result]) {
+                result = sym;
+            }
+        }
+        return result;
+    }
+
     /** Return the Piece whose move it is (WHITE or BLACK). */
     Piece turn() {
         return _turn;
@@ -80,7 +216,21 @@ class Board {
     /** Return the number of moves (that have not been undone) for this
      *  board. */
     int numMoves() {
-        return moves.size();
+        return _numMoves;
+    }
+
+    /** Return move K (0 <= K < numMoves()) of the game. */
+    Move move(int k) {
+        if (k < 0 || k >= _numMoves) {
+            throw error("no move %d", k);
+        }
+        return mv(_history[k]);
+    }
+
+    /** Return the last move made (and not undone), or null if there is
+     *  none. */
+    Move lastMove() {
+        return _numMoves == 0 ? null : mv(_history[_numMoves - 1]);
     }
 
     /** Return the winner in the current position, or null if the game is
@@ -116,10 +266,53 @@ class Board {
 
     /** Set square (COL, ROW) to P. */
     final void put(Piece p, int col, int row) {
+        Piece old = boardSet[col][row];
+        if (col < Bitboard.MAX_SIZE && row < Bitboard.MAX_SIZE) {
+            long bit = 1L << (col + Bitboard.MAX_SIZE * row);
+            _bits[old.ordinal()] &= ~bit;
+            _bits[p.ordinal()] |= bit;
+        }
+        if (old != p) {
+            if (old == WHITE || old == BLACK) {
+                removeAmazon(old, Square.sq(col, row));
+            }
+            if (p == WHITE || p == BLACK) {
+                addAmazon(p, Square.sq(col, row));
+            }
+        }
+        int index = Square.sq(col, row).index();
+        for (int sym = 0; sym < Symmetry.NUM; sym += 1) {
+            int image = _symmetries[sym][index];
+            _hashes[sym] ^=
+                ZOBRIST[old.ordinal()][image] ^ ZOBRIST[p.ordinal()][image];
+        }
         boardSet[col][row] = p;
         _winner = EMPTY;
     }
 
+    /** Add S to the amazons of SIDE, keeping them in order of index. */
+    private void addAmazon(Piece side, Square s) {
+        Square[] list = _amazons[side.ordinal()];
+        int k = _numAmazons[side.ordinal()];
+        for (; k > 0 && list[k - 1].index() > s.index(); k -= 1) {
+            list[k] = list[k - 1];
+        }
+        list[k] = s;
+        _numAmazons[side.ordinal()] += 1;
+    }
+
+    /** Remove S from the amazons of SIDE. */
+    private void removeAmazon(Piece side, Square s) {
+        Square[] list = _amazons[side.ordinal()];
+        int n = _numAmazons[side.ordinal()] -= 1;
+        int k = 0;
+        while (list[k] != s) {
+            k += 1;
+        }
+        System.arraycopy(list, k + 1, list, k, n - k);
+        list[n] = null;
+    }
+
     /** Set square COL ROW to P. */
     final void put(Piece p, char col, char row) {
         put(p, col - 'a', row - '1');
@@ -179,11 +372,19 @@ class Board {
         put(get(from), to);
         put(EMPTY, from);
         put(SPEAR, spear);
-        moves.push(mv(from, to, spear));
-        if (!legalMoves(_turn.opponent()).hasNext()) {
+        if (_numMoves == _history.length) {
+            _history = Arrays.copyOf(_history, 2 * _numMoves);
+        }
+        Move move = mv(from, to, spear);
+        _history[_numMoves] = move.index();
+        _numMoves += 1;
+        if (!hasMove(_turn.opponent())) {
             _winner = _turn;
         }
         _turn = _turn.opponent();
+        if (_listeners != null) {
+            publish(BoardChange.move(move));
+        }
     }
 
     /** Move according to MOVE, assuming it is a legal move. */
@@ -193,12 +394,86 @@ class Board {
 
     /** Undo one move.  Has no effect on the initial board. */
     void undo() {
-        Move reverse = moves.pop();
+        if (_numMoves == 0) {
+            return;
+        }
+        _numMoves -= 1;
+        Move reverse = mv(_history[_numMoves]);
         put(EMPTY, reverse.spear());
         put(get(reverse.to()), reverse.from());
         put(EMPTY, reverse.to());
         _turn = _turn.opponent();
         _winner = EMPTY;
+        if (_listeners != null) {
+            publish(BoardChange.undo(reverse));
+        }
+    }
+
+    /** Have LISTENER follow my changes: the moves made and undone, and
+     *  resets of the whole position (see BoardChange), starting with a
+     *  reset to my current position.  The changes are delivered in
+     *  batches on a shared pool of threads (see ChangeQueue), so making
+     *  a move costs me little more than queueing it.  Squares set one by
+     *  one with put, as in building a position or searching, are not
+     *  reported.  My copies do not inherit my listeners. */
+    void addListener(BoardListener listener) {
+        if (_listeners == null) {
+            _listeners = new ArrayList<>();
+        }
+        ChangeQueue queue = new ChangeQueue(listener);
+        queue.post(BoardChange.reset(encode()));
+        _listeners.add(queue);
+    }
+
+    /** Stop reporting my changes to LISTENER, once it has received all
+     *  those made so far.  Must not be called by a listener. */
+    void removeListener(BoardListener listener) {
+        if (_listeners == null) {
+            return;
+        }
+        for (int k = 0; k < _listeners.size(); k += 1) {
+            if (_listeners.get(k).listener() == listener) {
+                _listeners.remove(k).close();
+                break;
+            }
+        }
+        if (_listeners.isEmpty()) {
+            _listeners = null;
+        }
+    }
+
+    /** Pass CHANGE to my listeners. */
+    private void publish(BoardChange change) {
+        for (ChangeQueue queue : _listeners) {
+            queue.post(change);
+        }
+    }
+
+    /** Tell my listeners, if any, of my new position. */
+    private void publishReset() {
+        if (_listeners != null) {
+            publish(BoardChange.reset(encode()));
+        }
+    }
+
+    /** Return true iff SIDE has a legal move (regardless of whose turn it
+     *  is).  This is so iff one of SIDE's amazons is next to an empty
+     *  square, since an amazon that can move at all can move one step
+     *  and throw its spear back where it came from. */
+    boolean hasMove(Piece side) {
+        if (_size <= Bitboard.MAX_SIZE) {
+            return (Bitboard.neighbors(bits(side)) & bits(EMPTY)) != 0;
+        }
+        for (int k = 0; k < numAmazons(side); k += 1) {
+            Square s = amazon(side, k);
+            for (int dir = 0; dir < 8; dir += 1) {
+                Square n = s.queenMove(dir, 1);
+                if (n != null && get(n) == EMPTY) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /** Return an Iterator over the Squares that are reachable by an
@@ -223,6 +498,189 @@ class Board {
         return new LegalMoveIterator(side);
     }
 
+    /** Return a Spliterator over the legal moves for SIDE on the current
+     *  board (regardless of whose turn it is), in the same order as
+     *  legalMoves(SIDE).  It splits between amazons and then between
+     *  destinations of an amazon, and knows the exact number of moves
+     *  in each part, so that parallel streams divide the work evenly.
+     *  Its parts may run on several threads at once, as long as I am not
+     *  modified meanwhile. */
+    Spliterator<Move> legalMoveSpliterator(Piece side) {
+        return new LegalMoveSpliterator(side);
+    }
+
+    /** Return a (sequential) Stream of all legal moves on the current
+     *  board, in the same order as legalMoves().  Call parallel() on it to
+     *  process the moves on several threads, using copies of me for any
+     *  moves made. */
+    Stream<Move> legalMoveStream() {
+        return legalMoveStream(_turn);
+    }
+
+    /** Return a Stream of all legal moves on the current board for SIDE,
+     *  as for legalMoveStream(). */
+    Stream<Move> legalMoveStream(Piece side) {
+        return StreamSupport.stream(legalMoveSpliterator(side), false);
+    }
+
+    /** Put into RESULT the squares reachable by queen move from FROM,
+     *  treating ASEMPTY as empty, in the order of reachableFrom, and
+     *  return their number.  RESULT must have room for all of them. */
+    private int reachable(Square from, Square asEmpty, Square[] result) {
+        int n = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (Square s = from.queenMove(dir, 1);
+                 s != null && (s == asEmpty || get(s) == EMPTY);
+                 s = s.queenMove(dir, 1)) {
+                result[n] = s;
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** The largest number of squares reachable from one square. */
+    private static final int MAX_REACH = 4 * (SIZE - 1);
+
+    /** A spliterator used by legalMoveSpliterator.  The moves are grouped
+     *  into steps, each an amazon's move from one square to another, to be
+     *  followed by any of its spear throws.  A part covers a range of
+     *  steps (the first perhaps partly done), and is split at the boundary
+     *  between steps (preferably between amazons) nearest to its middle
+     *  move. */
+    private class LegalMoveSpliterator implements Spliterator<Move> {
+
+        /** All legal moves for SIDE (WHITE or BLACK). */
+        LegalMoveSpliterator(Piece side) {
+            int numAmazons = numAmazons(side);
+            Square[] squares = new Square[MAX_REACH],
+                spears = new Square[MAX_REACH];
+            _from = new Square[numAmazons * MAX_REACH];
+            _to = new Square[_from.length];
+            _offsets = new int[_from.length + 1];
+            int n = 0;
+            for (int a = 0; a < numAmazons; a += 1) {
+                Square from = amazon(side, a);
+                int numTo = reachable(from, null, squares);
+                for (int k = 0; k < numTo; k += 1) {
+                    _from[n] = from;
+                    _to[n] = squares[k];
+                    _offsets[n + 1] = _offsets[n]
+                        + reachable(squares[k], from, spears);
+                    n += 1;
+                }
+            }
+            _end = n;
+            _numSpears = -1;
+        }
+
+        /** The part of MODEL's moves from the start of step STEP
+         *  (exclusive of the spear throws before SPEAR, which are in
+         *  SPEARS, if NUMSPEARS >= 0) to the start of step END. */
+        private LegalMoveSpliterator(LegalMoveSpliterator model, int step,
+                                     int spear, Square[] spears,
+                                     int numSpears, int end) {
+            _from = model._from;
+            _to = model._to;
+            _offsets = model._offsets;
+            _step = step;
+            _spear = spear;
+            _spears = spears;
+            _numSpears = numSpears;
+            _end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Move> action) {
+            while (_step < _end) {
+                if (_numSpears < 0) {
+                    if (_spears == null) {
+                        _spears = new Square[MAX_REACH];
+                    }
+                    _numSpears = reachable(_to[_step], _from[_step], _spears);
+                }
+                if (_spear < _numSpears) {
+                    action.accept(mv(_from[_step], _to[_step],
+                                     _spears[_spear]));
+                    _spear += 1;
+                    return true;
+                }
+                _step += 1;
+                _spear = 0;
+                _numSpears = -1;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Move> trySplit() {
+            if (_end - _step < 2) {
+                return null;
+            }
+            int middle = (_offsets[_step] + _spear + _offsets[_end]) / 2;
+            int split;
+            if (_from[_step] != _from[_end - 1]) {
+                split = -1;
+                for (int k = _step + 1; k < _end; k += 1) {
+                    if (_from[k] != _from[k - 1]
+                        && (split < 0 || Math.abs(_offsets[k] - middle)
+                            < Math.abs(_offsets[split] - middle))) {
+                        split = k;
+                    }
+                }
+            } else {
+                split = Arrays.binarySearch(_offsets, _step + 1, _end,
+                                            middle);
+                if (split < 0) {
+                    split = -split - 1;
+                    if (split == _end
+                        || split > _step + 1
+                        && middle - _offsets[split - 1]
+                           < _offsets[split] - middle) {
+                        split -= 1;
+                    }
+                }
+            }
+            LegalMoveSpliterator prefix =
+                new LegalMoveSpliterator(this, _step, _spear, _spears,
+                                         _numSpears, split);
+            _step = split;
+            _spear = 0;
+            _spears = null;
+            _numSpears = -1;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return _offsets[_end] - _offsets[_step] - _spear;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+        }
+
+        /** The squares moved from and to in each step (shared by all
+         *  parts). */
+        private final Square[] _from, _to;
+        /** _offsets[k] is the number of moves in the steps before step
+         *  K (shared by all parts). */
+        private final int[] _offsets;
+        /** The current step. */
+        private int _step;
+        /** The number of the current step's spear throws done. */
+        private int _spear;
+        /** The spear throws of the current step (the first _numSpears),
+         *  or null. */
+        private Square[] _spears;
+        /** The number of spear throws of the current step, or -1 if they
+         *  have not been found yet. */
+        private int _numSpears;
+        /** The step after my last. */
+        private final int _end;
+    }
+
     /** An iterator used by reachableFrom. */
     private class ReachableFromIterator implements Iterator<Square> {
 
@@ -289,16 +747,16 @@ class Board {
 
         /** All legal moves for SIDE (WHITE or BLACK). */
         LegalMoveIterator(Piece side) {
-            _startingSquares = Square.iterator();
+            _fromPiece = side;
+            _nextAmazon = 0;
             _spearThrows = NO_SQUARES;
             _pieceMoves = NO_SQUARES;
-            _fromPiece = side;
             toNext();
         }
 
         @Override
         public boolean hasNext() {
-            return _startingSquares.hasNext();
+            return _spearThrows.hasNext();
         }
 
         @Override
@@ -313,29 +771,19 @@ class Board {
 
         /** Advance so that the next valid Move is
          *  _start-_nextSquare(sp), where sp is the next value of
-         *  _spearThrows. */
+         *  _spearThrows, or so that hasNext() is false if there are no
+         *  more moves. */
         private void toNext() {
-            if (!hasNext()) {
-                return;
-            }
-            if (!_pieceMoves.hasNext() && !_spearThrows.hasNext()) {
-                _start = _startingSquares.next();
-            }
-            if (get(_start) != _fromPiece) {
-                toNext();
-            } else {
-                if (!_pieceMoves.hasNext() && !_spearThrows.hasNext()) {
-                    _pieceMoves = reachableFrom(_start, null);
-                    if (!_pieceMoves.hasNext()) {
-                        toNext();
-                    }
-                }
-                if (_pieceMoves.hasNext() && !_spearThrows.hasNext()) {
+            while (!_spearThrows.hasNext()) {
+                if (_pieceMoves.hasNext()) {
                     _nextSquare = _pieceMoves.next();
                     _spearThrows = reachableFrom(_nextSquare, _start);
-                    if (!_spearThrows.hasNext()) {
-                        toNext();
-                    }
+                } else if (_nextAmazon < numAmazons(_fromPiece)) {
+                    _start = amazon(_fromPiece, _nextAmazon);
+                    _nextAmazon += 1;
+                    _pieceMoves = reachableFrom(_start, null);
+                } else {
+                    return;
                 }
             }
         }
@@ -344,8 +792,8 @@ class Board {
         private Piece _fromPiece;
         /** Current starting square. */
         private Square _start;
-        /** Remaining starting squares to consider. */
-        private Iterator<Square> _startingSquares;
+        /** Number (as for amazon()) of the next amazon to consider. */
+        private int _nextAmazon;
         /** Current piece's new position. */
         private Square _nextSquare;
         /** Remaining moves from _start to consider. */
@@ -368,34 +816,221 @@ class Board {
 
     @Override
     public String toString() {
-        String result = "";
-        for (int rowNum = 9; rowNum >= 0; rowNum -= 1) {
-            result += "  ";
-            for (int colNum = 0; colNum < SIZE; colNum += 1) {
-                result += " " + get(Square.sq(colNum, rowNum)).toString();
+        StringBuilder result = new StringBuilder((2 * _size + 4) * _size);
+        for (int rowNum = _size - 1; rowNum >= 0; rowNum -= 1) {
+            result.append("  ");
+            for (int colNum = 0; colNum < _size; colNum += 1) {
+                result.append(' ').append(get(colNum, rowNum));
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return my position (contents and side to move, but not history)
+     *  in compact text form: the rows from top to bottom separated by
+     *  '/', each giving its squares from left to right as W, B, or S, with
+     *  runs of empty squares written as their lengths, followed by a
+     *  space and w or b for the side to move.  The initial position is
+     *  "3B2B3/10/10/B8B/10/10/W8W/10/10/3W2W3 w".  The number of rows
+     *  gives the size of the board. */
+    String position() {
+        StringBuilder result = new StringBuilder(POSITION_LENGTH);
+        for (int row = _size - 1; row >= 0; row -= 1) {
+            int empties = 0;
+            for (int col = 0; col < _size; col += 1) {
+                Piece p = get(col, row);
+                if (p == EMPTY) {
+                    empties += 1;
+                } else {
+                    if (empties > 0) {
+                        result.append(empties);
+                        empties = 0;
+                    }
+                    result.append(p);
+                }
+            }
+            if (empties > 0) {
+                result.append(empties);
+            }
+            result.append(row > 0 ? '/' : ' ');
+        }
+        return result.append(_turn == WHITE ? 'w' : 'b').toString();
+    }
+
+    /** Set me to the position POSN, in the form produced by position()
+     *  (in either case), with an empty move history and the size given
+     *  by POSN.  Raises IllegalArgumentException, leaving me unchanged, if
+     *  POSN is malformed. */
+    void setPosition(String posn) {
+        int side = 1;
+        for (int k = 0; k < posn.length() && posn.charAt(k) != ' '; k += 1) {
+            side += posn.charAt(k) == '/' ? 1 : 0;
+        }
+        if (side < MIN_SIZE || side > SIZE) {
+            throw error("bad board size in position: %s", posn);
+        }
+        Piece[][] contents = new Piece[side][side];
+        int row = side - 1, col = 0, k = 0;
+        for (; k < posn.length() && posn.charAt(k) != ' '; k += 1) {
+            char c = Character.toUpperCase(posn.charAt(k));
+            if (c == '/') {
+                if (col != side || row == 0) {
+                    throw error("bad row in position: %s", posn);
+                }
+                row -= 1;
+                col = 0;
+            } else if (Character.isDigit(c)) {
+                int n = c - '0';
+                while (k + 1 < posn.length()
+                       && Character.isDigit(posn.charAt(k + 1))) {
+                    k += 1;
+                    n = 10 * n + posn.charAt(k) - '0';
+                }
+                if (n == 0 || col + n > side) {
+                    throw error("bad row in position: %s", posn);
+                }
+                for (; n > 0; n -= 1, col += 1) {
+                    contents[col][row] = EMPTY;
+                }
+            } else {
+                Piece p = c == 'W' ? WHITE : c == 'B' ? BLACK
+                    : c == 'S' ? SPEAR : null;
+                if (p == null || col == side) {
+                    throw error("bad square in position: %s", posn);
+                }
+                contents[col][row] = p;
+                col += 1;
             }
-            result += "\n";
         }
+        if (row != 0 || col != side || k + 2 != posn.length()
+            || "wWbB".indexOf(posn.charAt(k + 1)) < 0) {
+            throw error("bad position: %s", posn);
+        }
+        Piece turn = Character.toLowerCase(posn.charAt(k + 1)) == 'w'
+            ? WHITE : BLACK;
+        setContents(contents, turn);
+    }
+
+    /** Return my position (contents and side to move) in compact binary
+     *  form: a byte containing size(), then two bits per square (the
+     *  ordinal of its Piece) for the squares of the board in column-major
+     *  order, four squares per byte, then a byte containing the ordinal of
+     *  the side to move. */
+    byte[] encode() {
+        byte[] result = new byte[encodedLength(_size)];
+        result[0] = (byte) _size;
+        for (int i = 0; i < _size * _size; i += 1) {
+            result[1 + i / 4] |=
+                get(i / _size, i % _size).ordinal() << (2 * (i % 4));
+        }
+        result[result.length - 1] = (byte) _turn.ordinal();
         return result;
     }
 
-    /** Retrieve moves that have been placed.
-     * @return moves*/
-    Stack<Move> moves() {
-        return moves;
+    /** Set me to the position DATA, as produced by encode(), with an
+     *  empty move history. */
+    void decode(byte[] data) {
+        int side = data.length == 0 ? 0 : data[0];
+        if (side < MIN_SIZE || side > SIZE
+            || data.length != encodedLength(side)) {
+            throw error("bad encoded position");
+        }
+        Piece[] pieces = Piece.values();
+        Piece[][] contents = new Piece[side][side];
+        for (int i = 0; i < side * side; i += 1) {
+            contents[i / side][i % side] =
+                pieces[(data[1 + i / 4] >> (2 * (i % 4))) & 3];
+        }
+        int turn = data[data.length - 1];
+        if (turn != WHITE.ordinal() && turn != BLACK.ordinal()) {
+            throw error("bad encoded position");
+        }
+        setContents(contents, pieces[turn]);
+    }
+
+    /** Return the length of an encoded position on a board with SIDE
+     *  squares on a side. */
+    static int encodedLength(int side) {
+        return (side * side + 3) / 4 + 2;
     }
 
+    /** Set my size and squares to CONTENTS (a square array indexed by
+     *  column and row) and the side to move to TURN, clearing the move
+     *  history. */
+    private void setContents(Piece[][] contents, Piece turn) {
+        _size = contents.length;
+        clear();
+        for (int col = 0; col < _size; col += 1) {
+            for (int row = 0; row < _size; row += 1) {
+                put(contents[col][row], col, row);
+            }
+        }
+        _turn = turn;
+        if (!hasMove(_turn)) {
+            _winner = _turn.opponent();
+        }
+        publishReset();
+    }
+
+    /** Seed for the Zobrist keys, fixed so that hashes are the same in
+     *  every run. */
+    private static final long ZOBRIST_SEED = 0x5a6f6272697374L;
+
+    /** Zobrist keys for each Piece (by ordinal) on each square (by
+     *  index).  Empty squares contribute nothing. */
+    private static final long[][] ZOBRIST =
+        new long[Piece.values().length][SIZE * SIZE];
+
+    /** Zobrist key for Black to move. */
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        Random random = new Random(ZOBRIST_SEED);
+        for (Piece p : Piece.values()) {
+            for (int i = 0; p != EMPTY && i < SIZE * SIZE; i += 1) {
+                ZOBRIST[p.ordinal()][i] = random.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    /** Initial capacity of the move history. */
+    private static final int INIT_HISTORY = 32;
+
+    /** Typical length of a position string. */
+    private static final int POSITION_LENGTH = 64;
+
     /** An empty iterator for initialization. */
     private static final Iterator<Square> NO_SQUARES =
         Collections.emptyIterator();
 
+    /** Number of squares on a side. */
+    private int _size;
+    /** Bitboards of the lower-left 8x8 squares, indexed by Piece
+     *  ordinal. */
+    private long[] _bits;
+    /** The squares of the amazons of each side, indexed by Piece ordinal,
+     *  each in increasing order of index. */
+    private Square[][] _amazons;
+    /** Number of amazons of each side, indexed by Piece ordinal. */
+    private int[] _numAmazons;
     /** Piece whose turn it is (BLACK or WHITE). */
     private Piece _turn;
     /** Cached value of winner on this board, or EMPTY if it has not been
      *  computed. */
     private Piece _winner;
-    /** Keep track of moves that have been made.*/
-    private Stack<Move> moves = new Stack<>();
+    /** The moves made so far (and not undone), as Move indices. */
+    private int[] _history = new int[INIT_HISTORY];
+    /** Number of moves in _history. */
+    private int _numMoves;
+    /** Zobrist hashes of the images of my contents under each symmetry
+     *  (see hash()). */
+    private final long[] _hashes = new long[Symmetry.NUM];
+    /** The symmetries of a board of my size (see Symmetry.map). */
+    private int[][] _symmetries;
+    /** The queues of changes to my listeners, or null if I have none. */
+    private List<ChangeQueue> _listeners;
     /** Heuristic value of the board.*/
     private int _value;
 }
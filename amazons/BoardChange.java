@@ -0,0 +1,102 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** A change to a Board, as passed to a BoardListener: a move made, a
+ *  move undone, or a reset of the whole position (by init, setSize,
+ *  setPosition, decode, or copy).  A change holds only what is needed to
+ *  bring a copy of the board up to date: the Move made or undone, or the
+ *  new position in the compact form produced by Board.encode.  Changes
+ *  are immutable.
+ *  @author Dayuan Tang
+ */
+final class BoardChange {
+
+    /** The kinds of change. */
+    enum Kind {
+        /** A move made. */
+        MOVE,
+        /** The last move undone. */
+        UNDO,
+        /** A new position, with no move history. */
+        RESET
+    }
+
+    /** Return the change of making MOVE. */
+    static BoardChange move(Move move) {
+        return new BoardChange(Kind.MOVE, move, null);
+    }
+
+    /** Return the change of undoing MOVE. */
+    static BoardChange undo(Move move) {
+        return new BoardChange(Kind.UNDO, move, null);
+    }
+
+    /** Return the change of setting the board to POSITION, as produced by
+     *  Board.encode, which must not be modified afterwards. */
+    static BoardChange reset(byte[] position) {
+        return new BoardChange(Kind.RESET, null, position);
+    }
+
+    /** Return my kind. */
+    Kind kind() {
+        return _kind;
+    }
+
+    /** Return the move made or undone, or null for a RESET. */
+    Move move() {
+        return _move;
+    }
+
+    /** Return the new position of a RESET, as produced by Board.encode
+     *  (not to be modified), or null for other changes. */
+    byte[] position() {
+        return _position;
+    }
+
+    /** Apply me to SQUARES, the contents of a board (indexed by Square
+     *  index) as they were before me.  A MOVE or UNDO changes only its
+     *  three squares; a RESET, all of them, the squares off a small board
+     *  becoming SPEARs. */
+    void applyTo(Piece[] squares) {
+        switch (_kind) {
+        case MOVE:
+            squares[_move.to().index()] = squares[_move.from().index()];
+            squares[_move.from().index()] = EMPTY;
+            squares[_move.spear().index()] = SPEAR;
+            break;
+        case UNDO:
+            squares[_move.spear().index()] = EMPTY;
+            squares[_move.from().index()] = squares[_move.to().index()];
+            squares[_move.to().index()] = EMPTY;
+            break;
+        default:
+            Board board = new Board();
+            board.decode(_position);
+            for (int i = 0; i < squares.length; i += 1) {
+                squares[i] = board.get(Square.sq(i));
+            }
+            break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return _kind == Kind.RESET ? "reset" : _kind + " " + _move;
+    }
+
+    /** A change of kind KIND, making or undoing MOVE, or setting the board
+     *  to POSITION. */
+    private BoardChange(Kind kind, Move move, byte[] position) {
+        _kind = kind;
+        _move = move;
+        _position = position;
+    }
+
+    /** My kind. */
+    private final Kind _kind;
+    /** The move made or undone, or null. */
+    private final Move _move;
+    /** The new position, or null. */
+    private final byte[] _position;
+}
@@ -0,0 +1,14 @@
+package amazons;
+
+import java.util.List;
+
+/** An object that follows the changes to a Board (see Board.addListener).
+ *  @author Dayuan Tang
+ */
+interface BoardListener {
+
+    /** Respond to CHANGES, the changes made to the board since the last
+     *  call, in the order made.  CHANGES is valid only during the call. */
+    void boardChanged(List<BoardChange> changes);
+
+}
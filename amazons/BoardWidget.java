@@ -4,6 +4,8 @@ import ucb.gui2.Pad;
 
 import java.io.IOException;
 
+import java.util.List;
+
 import java.util.concurrent.ArrayBlockingQueue;
 
 import java.awt.Color;
@@ -38,15 +40,14 @@ class BoardWidget extends Pad {
     private static final String
             WHITE_QUEEN_IMAGE = "wq4.png",
             BLACK_QUEEN_IMAGE = "bq4.png",
-            SPEAR_IMAGE = "spear.png",
             LAVA_IMAGE = "lava.png";
 
     /**
-     * Size parameters.
+     * Size parameters: the sides of a square and of the largest board.
      */
     private static final int
             SQUARE_SIDE = 30,
-            BOARD_SIDE = SQUARE_SIDE * 10;
+            MAX_BOARD_SIDE = SQUARE_SIDE * Board.SIZE;
 
     /**
      * A graphical representation of an Amazons board that sends commands
@@ -55,12 +56,12 @@ class BoardWidget extends Pad {
     BoardWidget(ArrayBlockingQueue<String> commands) {
         _commands = commands;
         setMouseHandler("click", this::mouseClicked);
-        setPreferredSize(BOARD_SIDE, BOARD_SIDE);
+        _side = Board.SIZE;
+        setPreferredSize(boardSide(), boardSide());
 
         try {
             _whiteQueen = ImageIO.read(Utils.getResource(WHITE_QUEEN_IMAGE));
             _blackQueen = ImageIO.read(Utils.getResource(BLACK_QUEEN_IMAGE));
-            _spear = ImageIO.read(Utils.getResource(SPEAR_IMAGE));
             _lavaSpear = ImageIO.read(Utils.getResource(LAVA_IMAGE));
         } catch (IOException excp) {
             System.err.println("Could not read queen images.");
@@ -68,52 +69,54 @@ class BoardWidget extends Pad {
         }
         _acceptingMoves = false;
         _clickTimes = 0;
+        for (Piece p : Piece.values()) {
+            _tiles[p.ordinal()] = drawTile(p);
+        }
+        _buffer = new BufferedImage(MAX_BOARD_SIDE, MAX_BOARD_SIDE,
+                                    BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = _buffer.createGraphics();
+        for (int i = 0; i < _shown.length; i += 1) {
+            _shown[i] = EMPTY;
+            drawSquare(g, sq(i));
+        }
+        g.dispose();
     }
 
     /**
-     * Draw the bare board G.
+     * Return an image of a square containing P, with grid lines along
+     * its top and left edges.
      */
-    private void drawGrid(Graphics2D g) {
+    private BufferedImage drawTile(Piece p) {
+        BufferedImage tile =
+            new BufferedImage(SQUARE_SIDE, SQUARE_SIDE,
+                              BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
         g.setColor(LIGHT_SQUARE_COLOR);
-        g.fillRect(0, 0, BOARD_SIDE, BOARD_SIDE);
-        g.setColor(new Color(0, 0, 0));
-        for (int i = 0; i < BOARD_SIDE * 10; i += SQUARE_SIDE) {
-            g.drawLine(i, BOARD_SIDE, i, cy(9));
-        }
-        for (int i = 0; i < BOARD_SIDE * 10; i += SQUARE_SIDE) {
-            g.drawLine(0, i, BOARD_SIDE, i);
-        }
-    }
-
-    @Override
-    public synchronized void paintComponent(Graphics2D g) {
-        drawGrid(g);
-        for (int i = 0; i < SIZE * SIZE - 1; i++) {
-            Piece p = _board.get(sq(i));
-            if (p == WHITE || p == BLACK) {
-                drawQueen(g, sq(i), p);
-            }
-            if (p == SPEAR) {
-                drawSpear(g, sq(i));
-            }
+        g.fillRect(0, 0, SQUARE_SIDE, SQUARE_SIDE);
+        g.setColor(Color.BLACK);
+        g.drawLine(0, 0, SQUARE_SIDE, 0);
+        g.drawLine(0, 0, 0, SQUARE_SIDE);
+        if (p == WHITE || p == BLACK) {
+            g.drawImage(p == WHITE ? _whiteQueen : _blackQueen, 2, 4, null);
+        } else if (p == SPEAR) {
+            g.drawImage(_lavaSpear, 0, 0, null);
         }
+        g.dispose();
+        return tile;
     }
 
     /**
-     * Draw a queen for side PIECE at square S on G.
+     * Draw square S of my back buffer on G, according to _shown.
      */
-    private void drawQueen(Graphics2D g, Square s, Piece piece) {
-        g.drawImage(piece == WHITE ? _whiteQueen : _blackQueen,
-                cx(s.col()) + 2, cy(s.row()) + 4, null);
+    private void drawSquare(Graphics2D g, Square s) {
+        g.drawImage(_tiles[_shown[s.index()].ordinal()], cx(s), cy(s),
+                    null);
     }
 
-    /**
-     * Draw a spear.
-     * @param g Graphics.
-     * @param s Square in which to draw a spear.*/
-    private void drawSpear(Graphics2D g, Square s) {
-        g.drawImage(_lavaSpear,
-                cx(s.col()), cy(s.row()), null);
+    @Override
+    public synchronized void paintComponent(Graphics2D g) {
+        int side = boardSide();
+        g.drawImage(_buffer, 0, 0, side, side, 0, 0, side, side, null);
     }
 
     /**
@@ -137,19 +140,53 @@ class BoardWidget extends Pad {
     private synchronized void mouseClicked(String unused, MouseEvent e) {
         int xpos = e.getX(), ypos = e.getY();
         int x = xpos / SQUARE_SIDE,
-                y = (BOARD_SIDE - ypos) / SQUARE_SIDE;
-        if (_acceptingMoves
-                && x >= 0 && x < Board.SIZE && y >= 0 && y < Board.SIZE) {
+                y = _side - 1 - ypos / SQUARE_SIDE;
+        if (_acceptingMoves && xpos >= 0 && ypos >= 0
+                && x < _side && y >= 0) {
             click(sq(x, y));
         }
     }
 
     /**
-     * Revise the displayed board according to BOARD.
+     * Revise the displayed board according to CHANGES (see
+     * BoardListener), redrawing only the squares that change (all of
+     * them if the board changes size), and repainting only if there are
+     * any.
      */
-    synchronized void update(Board board) {
-        _board.copy(board);
-        repaint();
+    synchronized void update(List<BoardChange> changes) {
+        Graphics2D g = _buffer.createGraphics();
+        boolean changed = false;
+        for (BoardChange change : changes) {
+            if (change.kind() == BoardChange.Kind.RESET) {
+                Piece[] old = _shown.clone();
+                change.applyTo(_shown);
+                int side = change.position()[0];
+                boolean resized = side != _side;
+                if (resized) {
+                    _side = side;
+                    setPreferredSize(boardSide(), boardSide());
+                }
+                for (int i = 0; i < _shown.length; i += 1) {
+                    Square s = sq(i);
+                    if ((resized || _shown[i] != old[i])
+                        && s.col() < _side && s.row() < _side) {
+                        drawSquare(g, s);
+                        changed = true;
+                    }
+                }
+            } else {
+                Move move = change.move();
+                change.applyTo(_shown);
+                drawSquare(g, move.from());
+                drawSquare(g, move.to());
+                drawSquare(g, move.spear());
+                changed = true;
+            }
+        }
+        g.dispose();
+        if (changed) {
+            repaint();
+        }
     }
 
     /**
@@ -162,6 +199,13 @@ class BoardWidget extends Pad {
         repaint();
     }
 
+    /**
+     * Return the side of the board being displayed, in pixels.
+     */
+    private int boardSide() {
+        return _side * SQUARE_SIDE;
+    }
+
     /**
      * Return x-pixel coordinate of the left corners of column X
      * relative to the upper-left corner of the board.
@@ -175,7 +219,7 @@ class BoardWidget extends Pad {
      * relative to the upper-left corner of the board.
      */
     private int cy(int y) {
-        return (Board.SIZE - y - 1) * SQUARE_SIDE;
+        return (_side - y - 1) * SQUARE_SIDE;
     }
 
     /**
@@ -199,14 +243,27 @@ class BoardWidget extends Pad {
      */
     private ArrayBlockingQueue<String> _commands;
     /**
-     * Board being displayed.
+     * Contents of the squares being displayed, indexed by Square index.
      */
-    private final Board _board = new Board();
+    private final Piece[] _shown = new Piece[Board.SIZE * Board.SIZE];
 
     /**
-     * Size of the board.
+     * Pre-rendered images of a square containing each kind of Piece,
+     * indexed by Piece ordinal.
      */
-    private static final int SIZE = 10;
+    private final BufferedImage[] _tiles =
+        new BufferedImage[Piece.values().length];
+
+    /**
+     * Image of the whole board being displayed, in its upper-left
+     * corner.
+     */
+    private final BufferedImage _buffer;
+
+    /**
+     * Number of squares on a side of the board being displayed.
+     */
+    private int _side;
 
     /**
      * Image of white queen.
@@ -217,11 +274,6 @@ class BoardWidget extends Pad {
      */
     private BufferedImage _blackQueen;
 
-    /**
-     * Image of a spear.
-     */
-    private BufferedImage _spear;
-
     /**
      * Image of a lava spear.
      */
@@ -0,0 +1,102 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** A queue of the changes to a Board, which are delivered to a
+ *  BoardListener on a pool of threads shared by all queues, so that the
+ *  board never waits for the listener.  A queue occupies a thread only
+ *  while it has changes to deliver, and delivers them one batch at a
+ *  time, in order: the changes posted while the listener handles one
+ *  batch form the next.  A RESET makes all earlier changes moot, so a
+ *  batch starts at its last RESET.
+ *  @author Dayuan Tang
+ */
+class ChangeQueue {
+
+    /** A queue delivering to LISTENER. */
+    ChangeQueue(BoardListener listener) {
+        _listener = listener;
+    }
+
+    /** Return my listener. */
+    BoardListener listener() {
+        return _listener;
+    }
+
+    /** Add CHANGE to those to be delivered.  Never waits for the
+     *  listener. */
+    void post(BoardChange change) {
+        _changes.add(change);
+        synchronized (this) {
+            if (!_scheduled) {
+                _scheduled = true;
+                DELIVERERS.execute(this::deliver);
+            }
+        }
+    }
+
+    /** Wait until the changes posted so far have been delivered.  No
+     *  more may be posted afterwards.  Must not be called by the
+     *  listener. */
+    void close() {
+        synchronized (this) {
+            try {
+                while (_scheduled) {
+                    wait();
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Pass the changes posted so far to my listener as one batch, and
+     *  schedule the next batch if more have been posted meanwhile. */
+    private void deliver() {
+        List<BoardChange> batch = new ArrayList<>();
+        BoardChange change;
+        while ((change = _changes.poll()) != null) {
+            if (change.kind() == BoardChange.Kind.RESET) {
+                batch.clear();
+            }
+            batch.add(change);
+        }
+        try {
+            if (!batch.isEmpty()) {
+                _listener.boardChanged(batch);
+            }
+        } finally {
+            synchronized (this) {
+                if (_changes.isEmpty()) {
+                    _scheduled = false;
+                    notifyAll();
+                } else {
+                    DELIVERERS.execute(this::deliver);
+                }
+            }
+        }
+    }
+
+    /** The threads that deliver changes for all queues.  They are
+     *  created as needed and die after a minute idle, so that boards
+     *  with listeners (one per game or Server session) cost no threads
+     *  of their own. */
+    private static final ExecutorService DELIVERERS =
+        Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "board listener");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /** The listener. */
+    private final BoardListener _listener;
+    /** Changes not yet delivered. */
+    private final Queue<BoardChange> _changes = new ConcurrentLinkedQueue<>();
+    /** True iff a delivery is scheduled or under way. */
+    private boolean _scheduled;
+}
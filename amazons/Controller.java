@@ -1,15 +1,24 @@
 package amazons;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.function.Consumer;
 
 import static amazons.Utils.*;
 import static amazons.Piece.*;
-import static amazons.Square.SQ;
 
 /**
  * The input/output and GUI controller for play of Amazons.
@@ -31,10 +40,24 @@ final class Controller {
      */
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate) {
+        this(view, logFile, reporter, manualPlayerTemplate,
+             autoPlayerTemplate, new Scanner(System.in), System.out);
+    }
+
+    /**
+     * As for Controller(VIEW, LOGFILE, REPORTER, MANUALPLAYERTEMPLATE,
+     * AUTOPLAYERTEMPLATE), but reading commands from INPUT and writing
+     * prompts and board dumps to OUTPUT rather than to the standard
+     * input and output.
+     */
+    Controller(View view, PrintStream logFile, Reporter reporter,
+               Player manualPlayerTemplate, Player autoPlayerTemplate,
+               Scanner input, PrintStream output) {
         _view = view;
         _playing = false;
         _logFile = logFile;
-        _input = new Scanner(System.in);
+        _input = input;
+        _output = output;
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
@@ -48,21 +71,25 @@ final class Controller {
         _playing = true;
         _winner = null;
         _board.init();
+        _board.addListener(_view);
         _white = _manualPlayerTemplate.create(WHITE, this);
         _black = _autoPlayerTemplate.create(BLACK, this);
+        logGameStart();
         while (_playing) {
-            _view.update(_board);
             String command;
-            if (_winner == null) {
+            if (!_deferred.isEmpty()) {
+                command = _deferred.remove();
+            } else if (_winner == null) {
                 if (_board.winner() != null) {
                     reportNote(_board.winner().toName() + " wins.");
                     _winner = _board.winner();
+                    logGameEnd();
                     continue;
                 }
                 if (_board.turn() == WHITE) {
-                    command = _white.myMove();
+                    command = nextCommand(_white);
                 } else {
-                    command = _black.myMove();
+                    command = nextCommand(_black);
                 }
             } else {
                 command = _nonPlayer.myMove();
@@ -76,9 +103,189 @@ final class Controller {
                 reportError("Error: %s%n", excp.getMessage());
             }
         }
+        if (_searcher != null) {
+            _searcher.shutdownNow();
+            _searcher = null;
+        }
+        _board.removeListener(_view);
         if (_logFile != null) {
             _logFile.close();
         }
+        if (_binaryLog != null) {
+            try {
+                _binaryLog.close();
+            } catch (IOException excp) {
+                reportError("Could not write binary log: %s",
+                            excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Return the next move or command from PLAYER.  If PLAYER is automatic
+     * and the user can send commands while it thinks (as with the GUI),
+     * the search runs on a separate thread while this one watches for
+     * commands: "quit" and "new" cancel the search and are returned at
+     * once, moves (as from clicks on the board) are discarded, since they
+     * could only be meant for the position before PLAYER moves, and any
+     * others are deferred until PLAYER has moved.
+     */
+    private String nextCommand(Player player) {
+        if (!player.isAutomatic() || !_nonPlayer.canPoll()) {
+            return player.myMove();
+        }
+        if (_searcher == null) {
+            _searcher = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Future<String> search =
+            _searcher.submit(() -> player.myMove(cancelled));
+        try {
+            while (true) {
+                try {
+                    return search.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException excp) {
+                    String command = _nonPlayer.pollCommand();
+                    if (command == null) {
+                        continue;
+                    }
+                    String cmnd = command.trim().toLowerCase();
+                    if (cmnd.equals("quit") || cmnd.equals("new")) {
+                        cancelled.set(true);
+                        search.get();
+                        return command;
+                    }
+                    if (!Move.isGrammaticalMove(cmnd)) {
+                        _deferred.add(command);
+                    }
+                }
+            }
+        } catch (InterruptedException excp) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            return "quit";
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        }
+    }
+
+    /**
+     * Also record games in the binary format to LOG (if non-null).
+     */
+    void setBinaryLog(GameLogWriter log) {
+        _binaryLog = log;
+    }
+
+    /**
+     * Note that a game starts from the current position.  Its record in
+     * the binary log is written only with its first move or its end (see
+     * logGameHeader), so that it gives the seed and players in effect
+     * once the commands that set them up have run.
+     */
+    private void logGameStart() {
+        _gameLogged = false;
+    }
+
+    /**
+     * Record the start of the current game in the binary log, if there is
+     * one and it has not been recorded yet.  Must be called before the
+     * game's first move is made.
+     */
+    private void logGameHeader() {
+        if (_binaryLog != null && !_gameLogged) {
+            try {
+                _binaryLog.startGame(_seed, _board.encode(), _white.name(),
+                                     _black.name());
+                _gameLogged = true;
+            } catch (IOException excp) {
+                binaryLogFailed(excp);
+            }
+        }
+    }
+
+    /**
+     * Record MOVE, just made by MOVER, in the binary log, if there is one.
+     */
+    private void logMove(Move move, Player mover) {
+        if (_binaryLog != null) {
+            try {
+                _binaryLog.move(move, mover.lastNodes(), mover.lastDepth());
+            } catch (IOException excp) {
+                binaryLogFailed(excp);
+            }
+        }
+    }
+
+    /**
+     * Record the end of a game in the binary log, if there is one.
+     */
+    private void logGameEnd() {
+        logGameHeader();
+        if (_binaryLog != null) {
+            try {
+                _binaryLog.endGame(_board.winner());
+            } catch (IOException excp) {
+                binaryLogFailed(excp);
+            }
+        }
+    }
+
+    /**
+     * Report EXCP, a failure to write the binary log, and stop logging.
+     */
+    private void binaryLogFailed(IOException excp) {
+        reportError("Could not write binary log: %s", excp.getMessage());
+        try {
+            _binaryLog.close();
+        } catch (IOException again) {
+            /* The same failure, already reported. */
+        }
+        _binaryLog = null;
+    }
+
+    /**
+     * Play out the game from the current position, with WHITETEMPLATE
+     * supplying the White player and BLACKTEMPLATE the Black player (see
+     * the Player.create method), and return the winner.  Neither the view
+     * nor the manual player is consulted, so this is suitable for headless
+     * engine matches.  Raises IllegalArgumentException if a player
+     * produces an illegal move or a command other than a move.
+     */
+    Piece playOut(Player whiteTemplate, Player blackTemplate) {
+        return playOut(whiteTemplate, blackTemplate, new AtomicBoolean());
+    }
+
+    /**
+     * As for playOut(WHITETEMPLATE, BLACKTEMPLATE), but abandon the game
+     * as soon as possible once CANCELLED becomes true, stopping any
+     * search in progress (see Player.myMove), and return null.
+     */
+    Piece playOut(Player whiteTemplate, Player blackTemplate,
+                  AtomicBoolean cancelled) {
+        _white = whiteTemplate.create(WHITE, this);
+        _black = blackTemplate.create(BLACK, this);
+        logGameStart();
+        while (_board.winner() == null) {
+            Player player = _board.turn() == WHITE ? _white : _black;
+            String command =
+                cancelled.get() ? null : player.myMove(cancelled);
+            if (cancelled.get()) {
+                return null;
+            }
+            if (command == null || !Move.isGrammaticalMove(command)) {
+                throw error("%s did not move", _board.turn().toName());
+            }
+            executeCommand(command);
+        }
+        logGameEnd();
+        return _board.winner();
     }
 
     /**
@@ -105,6 +312,7 @@ final class Controller {
      * Initially, the PRNG is randomly seeded.
      */
     void setSeed(long seed) {
+        _seed = seed;
         _randGen.setSeed(seed);
     }
 
@@ -114,8 +322,8 @@ final class Controller {
      * leading and trailing whitespace.
      */
     String readLine() {
-        System.out.print("> ");
-        System.out.flush();
+        _output.print("> ");
+        _output.flush();
         if (_input.hasNextLine()) {
             return _input.nextLine().trim();
         } else {
@@ -179,8 +387,10 @@ final class Controller {
         new Command("seed\\s+(\\d+)$", this::doSeed),
         new Command("dump$", this::doDump),
         new Command("new$", this::doNew),
-        new Command(String.format("%s-%s\\(%s\\)|%s\\s+%s\\s+%s$",
-                SQ, SQ, SQ, SQ, SQ, SQ), this::doMove),
+        new Command("size\\s+(\\d+)$", this::doSize),
+        new Command("setup\\s+([wbs\\d/]+)\\s+([wb])$", this::doSetup),
+        new Command("analyze\\s+(\\d+)$", this::doAnalyze),
+        new Command(Move.MOVE_SYNTAX + "$", this::doMove),
         new Command("(auto\\s+?)(black|white)$", this::doAuto),
         new Command("(manual\\s+?)(black|white)$", this::doManual)
     };
@@ -209,7 +419,19 @@ final class Controller {
         for (Command parser : _commands) {
             parser._matcher.reset(cmnd);
             if (parser._matcher.matches()) {
+                if (!Events.enabled()) {
+                    parser._processor.accept(parser._matcher);
+                    return;
+                }
+                Events.Command event = new Events.Command();
+                event.begin();
                 parser._processor.accept(parser._matcher);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.type = Move.isGrammaticalMove(cmnd) ? "move"
+                        : cmnd.split("\\s+")[0];
+                    event.commit();
+                }
                 return;
             }
         }
@@ -250,7 +472,10 @@ final class Controller {
         if (!_board.isLegal(m)) {
             throw error("Illegal move. Please try again.");
         }
+        Player mover = _board.turn() == WHITE ? _white : _black;
+        logGameHeader();
         _board.makeMove(m);
+        logMove(m, mover);
     }
 
     /**
@@ -259,6 +484,84 @@ final class Controller {
     private void doNew(Matcher unused) {
         _board.init();
         _winner = null;
+        newPlayers();
+        logGameStart();
+    }
+
+    /**
+     * Command "size N", where N is the first group of MAT: start a new
+     * game on a board with N squares on a side.
+     */
+    private void doSize(Matcher mat) {
+        try {
+            setBoardSize(Integer.parseInt(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /**
+     * Start a new game on a board with SIDE squares on a side.
+     */
+    void setBoardSize(int side) {
+        _board.setSize(side);
+        _winner = null;
+        newPlayers();
+        logGameStart();
+    }
+
+    /**
+     * Command "setup POSN SIDE", where POSN SIDE (in the form produced by
+     * Board.position) are the groups of MAT.
+     */
+    private void doSetup(Matcher mat) {
+        _board.setPosition(mat.group(1) + " " + mat.group(2));
+        _winner = null;
+        newPlayers();
+        logGameStart();
+    }
+
+    /**
+     * Replace the players of a game in progress with new ones of the same
+     * kinds, so that a new game starts with fresh clocks.
+     */
+    private void newPlayers() {
+        if (_white != null) {
+            _white = _white.create(WHITE, this);
+            _black = _black.create(BLACK, this);
+        }
+    }
+
+    /**
+     * Command "analyze K", where K is the first group of MAT: print the
+     * engine's K best moves in the current position, with their values
+     * (positive values favor White) and principal variations, after each
+     * iteration of its search.
+     */
+    private void doAnalyze(Matcher mat) {
+        int k;
+        try {
+            k = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (k == 0) {
+            throw error("must analyze at least one move");
+        }
+        if (_board.winner() != null) {
+            throw error("game is over");
+        }
+        if (!(_autoPlayerTemplate instanceof AI)) {
+            throw error("no engine available for analysis");
+        }
+        AI engine = (AI) _autoPlayerTemplate.create(_board.turn(), this);
+        engine.analyze(_board.snapshot(), k, lines -> {
+            for (int i = 0; i < lines.size(); i += 1) {
+                _output.printf("depth %d  %d. %s%n", engine.lastDepth(),
+                               i + 1, lines.get(i));
+            }
+            _output.flush();
+        });
     }
 
     /**
@@ -283,14 +586,32 @@ final class Controller {
      * Dump the contents of the board on standard output.
      */
     private void doDump(Matcher unused) {
-        System.out.printf("===%n%s===%n", _board);
+        _output.printf("===%n%s===%n", _board);
     }
 
+    /**
+     * Milliseconds between checks for user commands while an automatic
+     * player is thinking.
+     */
+    private static final long POLL_INTERVAL = 50;
+
     /**
      * The board.
      */
     private Board _board = new Board();
 
+    /**
+     * Commands received while an automatic player was thinking, to be
+     * executed after it has moved.
+     */
+    private final Queue<String> _deferred = new ArrayDeque<>();
+
+    /**
+     * Thread on which automatic players search while commands are being
+     * watched for, or null if not yet needed.
+     */
+    private ExecutorService _searcher;
+
     /**
      * The winning side of the current game.
      */
@@ -306,21 +627,41 @@ final class Controller {
      */
     private View _view;
 
+    /**
+     * The seed most recently given to _randGen.
+     */
+    private long _seed = new Random().nextLong();
+
     /**
      * My pseudo-random number generator.
      */
-    private Random _randGen = new Random();
+    private Random _randGen = new Random(_seed);
 
     /**
      * Log file, or null if absent.
      */
     private PrintStream _logFile;
 
+    /**
+     * Binary game log, or null if absent.
+     */
+    private GameLogWriter _binaryLog;
+
+    /**
+     * True iff the start of the current game is in the binary log.
+     */
+    private boolean _gameLogged;
+
     /**
      * Input source.
      */
     private Scanner _input;
 
+    /**
+     * Destination for prompts and board dumps.
+     */
+    private PrintStream _output;
+
     /**
      * The current White and Black players, each created from
      * _autoPlayerTemplate or _manualPlayerTemplate.
@@ -0,0 +1,300 @@
+package amazons;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.*;
+
+import static amazons.Utils.error;
+
+/** Search knowledge that an AI carries from one search to the next: a
+ *  transposition table of positions already searched (which lets a new
+ *  search reuse the tree explored by earlier ones) and a history table
+ *  of the amazon moves that have caused cutoffs.  A context may be kept
+ *  for a single AI, or shared among the AIs of several games and of
+ *  both sides, but its history table is not thread-safe, so AIs that
+ *  share one must never search at the same time.
+ *  <p>
+ *  The transposition table lives outside the Java heap, in a direct
+ *  buffer of fixed-size entries, so that a large table adds nothing to
+ *  the work of the garbage collector.  Each entry is two longs: the
+ *  encoded data, and the position's hash XORed with the data.  A probe
+ *  accepts an entry only if the two agree, so an entry torn by writers
+ *  racing on the same slot reads as absent rather than as a wrong
+ *  entry, and the table needs no locks.  Entries are stamped with the
+ *  generation in which they were stored; starting a new game advances
+ *  the generation (see newSearch and age), after which the old entries
+ *  are still used but give way to new ones.
+ *  <p>
+ *  The table may instead be a memory-mapped file (see map), which keeps
+ *  it from one run of the program to the next: a new run starts with
+ *  the analysis of earlier ones, in particular of the openings, at the
+ *  cost only of mapping the file.  The file is a header of ENTRY_BYTES
+ *  bytes (the long MAGIC, the int log2 of the number of entries, and
+ *  the int fingerprint of the scores in the table) followed by the
+ *  table, in native byte order.  Scores from another evaluation would
+ *  mislead the search, so a file whose fingerprint differs from the
+ *  caller's starts out empty.
+ *  @author Dayuan Tang
+ */
+class EngineContext {
+
+    /** Kinds of transposition-table scores: exact, at least the stored
+     *  value, and at most the stored value. */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** The result of probing for a position not in the table. */
+    static final long NONE = 0;
+
+    /** Default log2 of the number of transposition-table entries. */
+    static final int DEFAULT_BITS = 18;
+
+    /** Largest log2 of the number of transposition-table entries. */
+    static final int MAX_BITS = 26;
+
+    /** Bytes in a transposition-table entry: the check word and the
+     *  data. */
+    static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** First word of a transposition-table file. */
+    static final long MAGIC = 0x416d617a6f6e5454L;
+
+    /** Number of squares on the board. */
+    private static final int SQUARES = Board.SIZE * Board.SIZE;
+
+    /** Layout of the data of a transposition-table entry: the bound
+     *  kind in the low 2 bits, then the depth (8 bits), then the move
+     *  index plus one (20 bits, 0 for no move), then the generation (2
+     *  bits), and the score in the high 32 bits. */
+    private static final int DEPTH_SHIFT = 2, MOVE_SHIFT = 10,
+        AGE_SHIFT = 30, SCORE_SHIFT = 32;
+
+    /** Number of distinct generations. */
+    private static final int AGES = 4;
+
+    /** A context with a transposition table of 2**DEFAULT_BITS
+     *  entries. */
+    EngineContext() {
+        this(DEFAULT_BITS);
+    }
+
+    /** A context with a transposition table of 2**BITS entries. */
+    EngineContext(int bits) {
+        this(ByteBuffer.allocateDirect(ENTRY_BYTES << checkBits(bits)),
+             bits);
+    }
+
+    /** A context whose transposition table of 2**BITS entries is
+     *  TABLE, which holds its entries in native byte order. */
+    private EngineContext(ByteBuffer table, int bits) {
+        _table = table.order(ByteOrder.nativeOrder());
+        _mask = (1 << bits) - 1;
+        _history = new int[Piece.values().length][SQUARES * SQUARES];
+    }
+
+    /** Return a context whose transposition table is as large as fits
+     *  in MEGABYTES megabytes. */
+    static EngineContext ofMegabytes(int megabytes) {
+        return new EngineContext(bits(megabytes));
+    }
+
+    /** Return a context whose transposition table is mapped from FILE,
+     *  which keeps the entries stored in it, for an AI whose scores have
+     *  fingerprint FINGERPRINT (see AI.fingerprint).  If FILE is empty or
+     *  does not exist, it becomes a table of 2**BITS empty entries;
+     *  otherwise it must hold a table written by an earlier context,
+     *  whose size it keeps, and whose entries it keeps only if they were
+     *  stored with the same FINGERPRINT. */
+    static EngineContext map(Path file, int bits, int fingerprint)
+        throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file, CREATE, READ, WRITE)) {
+            boolean fresh = channel.size() == 0;
+            if (fresh) {
+                checkBits(bits);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(ENTRY_BYTES)
+                    .order(ByteOrder.nativeOrder());
+                channel.read(header, 0);
+                bits = header.getInt(Long.BYTES);
+                fresh = header.getInt(Long.BYTES + Integer.BYTES)
+                    != fingerprint;
+                if (header.getLong(0) != MAGIC || bits < 0
+                    || bits > MAX_BITS
+                    || channel.size()
+                       != ENTRY_BYTES + ((long) ENTRY_BYTES << bits)) {
+                    throw error("%s is not a transposition table", file);
+                }
+            }
+            MappedByteBuffer mapped =
+                channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                            ENTRY_BYTES + (ENTRY_BYTES << bits));
+            mapped.order(ByteOrder.nativeOrder());
+            EngineContext result =
+                new EngineContext(mapped.slice(ENTRY_BYTES,
+                                               ENTRY_BYTES << bits), bits);
+            result._file = mapped;
+            if (fresh) {
+                result.clear();
+                mapped.putLong(0, MAGIC).putInt(Long.BYTES, bits)
+                    .putInt(Long.BYTES + Integer.BYTES, fingerprint);
+            }
+            return result;
+        }
+    }
+
+    /** Return the log2 of the number of entries of the largest
+     *  transposition table that fits in MEGABYTES megabytes. */
+    static int bits(int megabytes) {
+        long entries = ((long) megabytes << 20) / ENTRY_BYTES;
+        if (megabytes <= 0 || entries > 1L << MAX_BITS) {
+            throw error("hash size must be 1 to %d MB",
+                        (ENTRY_BYTES << MAX_BITS) >> 20);
+        }
+        return 63 - Long.numberOfLeadingZeros(entries);
+    }
+
+    /** Return BITS, after checking that it is a valid log2 of the number
+     *  of transposition-table entries. */
+    private static int checkBits(int bits) {
+        if (bits < 0 || bits > MAX_BITS) {
+            throw error("table size must be 2**0 to 2**%d entries",
+                        MAX_BITS);
+        }
+        return bits;
+    }
+
+    /** If my transposition table is mapped from a file, make sure that
+     *  the file holds all my entries. */
+    void save() {
+        if (_file != null) {
+            _file.force();
+        }
+    }
+
+    /** Return the number of bytes in my transposition table. */
+    int tableBytes() {
+        return _table.capacity();
+    }
+
+    /** Forget everything. */
+    void clear() {
+        for (int i = 0; i < _table.capacity(); i += Long.BYTES) {
+            _table.putLong(i, 0);
+        }
+        for (int[] table : _history) {
+            Arrays.fill(table, 0);
+        }
+        _age = 0;
+        _lastPly = 0;
+    }
+
+    /** Start a new generation of transposition-table entries: the
+     *  entries stored so far remain available, but are replaced by new
+     *  ones regardless of their depth. */
+    void age() {
+        _age = (_age + 1) % AGES;
+    }
+
+    /** Prepare for a new search of a position PLY moves into its game:
+     *  older history counts are halved, so that the history reflects
+     *  recent searches most, and if PLY is less than that of the last
+     *  search, a new game has started, so I age the table. */
+    void newSearch(int ply) {
+        if (ply < _lastPly) {
+            age();
+        }
+        _lastPly = ply;
+        for (int[] table : _history) {
+            for (int i = 0; i < table.length; i += 1) {
+                table[i] >>= 1;
+            }
+        }
+    }
+
+    /** Return the entry for the position with hash HASH, or NONE if
+     *  there is none.  Decode the result with bound, depth, score, and
+     *  move. */
+    long probe(long hash) {
+        int i = ((int) hash & _mask) * ENTRY_BYTES;
+        long data = _table.getLong(i + Long.BYTES);
+        return (_table.getLong(i) ^ data) == hash ? data : NONE;
+    }
+
+    /** Record that a search of the position with hash HASH to depth
+     *  DEPTH found the score SCORE, of kind BOUND, with best move MOVE
+     *  (null if none).  Replaces any entry for another position, but
+     *  keeps an entry for the same position from a deeper search of the
+     *  current generation. */
+    void store(long hash, int depth, int bound, int score, Move move) {
+        long old = probe(hash);
+        if (old != NONE && depth(old) > depth && age(old) == _age) {
+            return;
+        }
+        int i = ((int) hash & _mask) * ENTRY_BYTES;
+        long data = ((long) score << SCORE_SHIFT)
+            | ((long) _age << AGE_SHIFT)
+            | ((long) (move == null ? 0 : move.index() + 1) << MOVE_SHIFT)
+            | (depth << DEPTH_SHIFT) | bound;
+        _table.putLong(i, hash ^ data);
+        _table.putLong(i + Long.BYTES, data);
+    }
+
+    /** Return the bound kind (EXACT, LOWER, or UPPER) of ENTRY. */
+    static int bound(long entry) {
+        return (int) entry & 3;
+    }
+
+    /** Return the search depth of ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xff;
+    }
+
+    /** Return the generation of ENTRY. */
+    private static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & (AGES - 1);
+    }
+
+    /** Return the score of ENTRY. */
+    static int score(long entry) {
+        return (int) (entry >> SCORE_SHIFT);
+    }
+
+    /** Return the best move of ENTRY, or null if it has none. */
+    static Move move(long entry) {
+        int index = (int) (entry >>> MOVE_SHIFT) & 0xfffff;
+        return index == 0 ? null : Move.mv(index - 1);
+    }
+
+    /** Return the history count of SIDE's amazon moves from FROM to
+     *  TO. */
+    int history(Piece side, Square from, Square to) {
+        return _history[side.ordinal()][from.index() * SQUARES + to.index()];
+    }
+
+    /** Record that SIDE's amazon move from FROM to TO caused a cutoff in
+     *  a search of depth DEPTH. */
+    void addHistory(Piece side, Square from, Square to, int depth) {
+        _history[side.ordinal()][from.index() * SQUARES + to.index()] +=
+            depth * depth;
+    }
+
+    /** The transposition table: for each entry, the position's hash
+     *  XORed with the data, followed by the data. */
+    private final ByteBuffer _table;
+    /** The whole mapping of my table's file, or null if it has none. */
+    private MappedByteBuffer _file;
+    /** Mask selecting a table index from a hash. */
+    private final int _mask;
+    /** History counts, indexed by side and by from and to square. */
+    private final int[][] _history;
+    /** The current generation. */
+    private int _age;
+    /** Number of moves made in the position of the last search. */
+    private int _lastPly;
+}
@@ -0,0 +1,105 @@
+package amazons;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static amazons.Utils.error;
+
+/** A cache of static evaluations, so that a leaf reached again by
+ *  transposed move orders costs one memory probe rather than a new
+ *  count of every amazon's reachable squares.  It is a fixed-size table
+ *  indexed by the low bits of a position's hash, kept apart from the
+ *  transposition table (see EngineContext) so that leaves never crowd
+ *  out the search results.  A new entry simply replaces whatever
+ *  occupies its slot.
+ *  <p>
+ *  Each entry is a single long: a check word taken from the high bits
+ *  of the hash, and the score.  Entries are read and written whole
+ *  (with opaque access, which costs no more than plain access but
+ *  cannot tear), so the cache may be shared among threads without
+ *  locks.  A cache holds the scores of one evaluation function; its
+ *  owner must replace it when the function changes.
+ *  @author Dayuan Tang
+ */
+final class EvalCache {
+
+    /** The result of probing for a position not in the cache. */
+    static final int MISS = Integer.MIN_VALUE;
+
+    /** Default log2 of the number of entries. */
+    static final int DEFAULT_BITS = 16;
+
+    /** A cache of 2**DEFAULT_BITS entries. */
+    EvalCache() {
+        this(DEFAULT_BITS);
+    }
+
+    /** A cache of 2**BITS entries. */
+    EvalCache(int bits) {
+        if (bits < 1 || bits > 30) {
+            throw error("bad evaluation cache size: 2**%d", bits);
+        }
+        _entries = new AtomicLongArray(1 << bits);
+        _mask = (1 << bits) - 1;
+    }
+
+    /** Return the score stored for the position with hash HASH, or MISS
+     *  if there is none. */
+    int probe(long hash) {
+        long entry = _entries.getOpaque((int) hash & _mask);
+        if ((int) (entry >>> 32) == check(hash)) {
+            _hits.increment();
+            return (int) entry;
+        }
+        _misses.increment();
+        return MISS;
+    }
+
+    /** Record SCORE, which must not be MISS, as the score of the
+     *  position with hash HASH. */
+    void store(long hash, int score) {
+        _entries.setOpaque((int) hash & _mask,
+                           ((long) check(hash) << 32)
+                           | (score & 0xffffffffL));
+    }
+
+    /** Remove all entries and reset my statistics. */
+    void clear() {
+        for (int i = 0; i <= _mask; i += 1) {
+            _entries.setOpaque(i, 0);
+        }
+        _hits.reset();
+        _misses.reset();
+    }
+
+    /** Return the number of probes that found their position. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of probes that did not. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of entries I hold. */
+    int capacity() {
+        return _mask + 1;
+    }
+
+    /** Return the check word of the position with hash HASH: its high
+     *  32 bits, with the lowest set, so that an empty entry (0) never
+     *  matches. */
+    private static int check(long hash) {
+        return (int) (hash >>> 32) | 1;
+    }
+
+    /** The entries, each the check word and score of a position. */
+    private final AtomicLongArray _entries;
+    /** Mask selecting the index of an entry from a hash. */
+    private final int _mask;
+    /** Number of probes that found their position. */
+    private final LongAdder _hits = new LongAdder();
+    /** Number of probes that did not. */
+    private final LongAdder _misses = new LongAdder();
+}
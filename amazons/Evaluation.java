@@ -0,0 +1,154 @@
+package amazons;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static amazons.Piece.*;
+import static amazons.Utils.error;
+import static amazons.Utils.iterable;
+
+/** A static evaluation function for Amazons positions: a weighted sum
+ *  of features, each the difference between White's and Black's value
+ *  of some measure, so that positive scores favor White.  The features
+ *  are
+ *      mobility:  squares reachable by queen moves of the side's amazons;
+ *      liberties: empty squares next to the side's amazons;
+ *      trapped:   the side's amazons that cannot move.
+ *  The weights are integers, and are read from and written to files of
+ *  lines of the form "NAME VALUE" (with '#' starting a comment), which
+ *  Tuner produces.
+ *  @author Dayuan Tang
+ */
+final class Evaluation {
+
+    /** Names of the features, in order. */
+    static final List<String> FEATURES =
+        List.of("mobility", "liberties", "trapped");
+
+    /** The default evaluation, which counts mobility only. */
+    static final Evaluation DEFAULT = new Evaluation(16, 0, 0);
+
+    /** An evaluation using WEIGHTS, one per feature, in order. */
+    Evaluation(int... weights) {
+        if (weights.length != FEATURES.size()) {
+            throw error("need %d weights", FEATURES.size());
+        }
+        _weights = weights.clone();
+    }
+
+    /** Return the evaluation whose weights are in the file FILE.
+     *  Features the file does not mention get their default weights. */
+    static Evaluation load(Path file) throws IOException {
+        int[] weights = DEFAULT._weights.clone();
+        for (String line : Files.readAllLines(file)) {
+            line = line.replaceFirst("#.*", "").trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            int k = FEATURES.indexOf(fields[0]);
+            if (fields.length != 2 || k < 0) {
+                throw error("bad weights line: %s", line);
+            }
+            try {
+                weights[k] = Integer.parseInt(fields[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad weight: %s", fields[1]);
+            }
+        }
+        return new Evaluation(weights);
+    }
+
+    /** Write my weights to FILE, in the form read by load. */
+    void save(Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            out.println("# Amazons evaluation weights");
+            for (int k = 0; k < _weights.length; k += 1) {
+                out.printf("%s %d%n", FEATURES.get(k), _weights[k]);
+            }
+        }
+    }
+
+    /** Return weight K. */
+    int weight(int k) {
+        return _weights[k];
+    }
+
+    /** Return the value of BOARD according to my weights. */
+    int score(Board board) {
+        int[] features = new int[FEATURES.size()];
+        features(board, features);
+        int result = 0;
+        for (int k = 0; k < features.length; k += 1) {
+            result += _weights[k] * features[k];
+        }
+        return result;
+    }
+
+    /** Set RESULT[K] to the value of feature K on BOARD (White's minus
+     *  Black's), for each feature. */
+    static void features(Board board, int[] result) {
+        Arrays.fill(result, 0);
+        addFeatures(board, WHITE, 1, result);
+        addFeatures(board, BLACK, -1, result);
+    }
+
+    /** Add SIGN times SIDE's value of each feature on BOARD to the
+     *  corresponding element of RESULT. */
+    private static void addFeatures(Board board, Piece side, int sign,
+                                    int[] result) {
+        boolean bits = board.size() <= Bitboard.MAX_SIZE;
+        long empty = board.bits(EMPTY);
+        for (int k = 0; k < board.numAmazons(side); k += 1) {
+            Square s = board.amazon(side, k);
+            int reach = 0, liberties = 0;
+            if (bits) {
+                long amazon = 1L << (s.col() + Bitboard.MAX_SIZE * s.row());
+                reach = Long.bitCount(Bitboard.reach(amazon, empty));
+                liberties =
+                    Long.bitCount(Bitboard.neighbors(amazon) & empty);
+            } else {
+                for (Square ignored : iterable(board.reachableFrom(s, null))) {
+                    reach += 1;
+                }
+                for (int dir = 0; dir < 8; dir += 1) {
+                    Square n = s.queenMove(dir, 1);
+                    if (n != null && board.get(n) == EMPTY) {
+                        liberties += 1;
+                    }
+                }
+            }
+            result[0] += sign * reach;
+            result[1] += sign * liberties;
+            result[2] += reach == 0 ? sign : 0;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Evaluation
+            && Arrays.equals(_weights, ((Evaluation) obj)._weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_weights);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < _weights.length; k += 1) {
+            result.append(k == 0 ? "" : " ").append(FEATURES.get(k))
+                .append('=').append(_weights[k]);
+        }
+        return result.toString();
+    }
+
+    /** Weights of the features, in order. */
+    private final int[] _weights;
+}
@@ -0,0 +1,140 @@
+package amazons;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/** Java Flight Recorder events describing the work of the engine and the
+ *  controller.  They are recorded only while a flight recording is
+ *  running (for example, one started with the JVM option
+ *  -XX:StartFlightRecording=filename=amazons.jfr), and cost next to
+ *  nothing otherwise, so they stay in all builds.  The first use of an
+ *  event class, however, starts up the flight recorder, which takes a
+ *  large part of a second, so events are created only once the recorder
+ *  is running (see enabled).
+ *  @author Dayuan Tang
+ */
+final class Events {
+
+    /** Category of all my events. */
+    private static final String CATEGORY = "Amazons";
+
+    /** Number of times Board.copy has been called since the periodic
+     *  events were registered. */
+    private static final LongAdder BOARD_COPIES = new LongAdder();
+
+    /** Not instantiated. */
+    private Events() {
+    }
+
+    /** Return true iff the flight recorder has been started in this JVM,
+     *  so that events may be recorded.  Checking does not start it. */
+    static boolean enabled() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /** Register the periodic events, if the flight recorder is running.
+     *  Has no effect after the first successful call.  Thus the periodic
+     *  events appear only in recordings started with the JVM (or before
+     *  the call). */
+    static synchronized void register() {
+        if (!_registered && enabled()) {
+            FlightRecorder.addPeriodicEvent(Counters.class, () -> {
+                Counters event = new Counters();
+                event.boardCopies = BOARD_COPIES.sum();
+                event.commit();
+            });
+            _registered = true;
+        }
+    }
+
+    /** Count a call of Board.copy, if the periodic events that report
+     *  the count are registered.  Otherwise, as when the flight recorder
+     *  is off, this is a single read, and searches, which copy a board
+     *  for every node, do not contend for the counter. */
+    static void countBoardCopy() {
+        if (_registered) {
+            BOARD_COPIES.increment();
+        }
+    }
+
+    /** True iff register has been called successfully. */
+    private static volatile boolean _registered;
+
+    /** One AI move search. */
+    @Name("amazons.Search")
+    @Label("Search")
+    @Category(CATEGORY)
+    @Description("A search for an AI move")
+    @StackTrace(false)
+    static class Search extends Event {
+        /** Player searching. */
+        @Label("Side")
+        String side;
+        /** Squares on a side of the board. */
+        @Label("Board Size")
+        int size;
+        /** Depth of the last complete iteration. */
+        @Label("Depth")
+        int depth;
+        /** Positions examined. */
+        @Label("Nodes")
+        long nodes;
+        /** Move chosen. */
+        @Label("Move")
+        String move;
+    }
+
+    /** One iteration of an iteratively deepening search. */
+    @Name("amazons.Iteration")
+    @Label("Search Iteration")
+    @Category(CATEGORY)
+    @Description("One iteration of an AI search")
+    @StackTrace(false)
+    static class Iteration extends Event {
+        /** Depth of the iteration. */
+        @Label("Depth")
+        int depth;
+        /** Positions examined so far in the search. */
+        @Label("Nodes")
+        long nodes;
+        /** Best move found by the iteration. */
+        @Label("Best Move")
+        String move;
+        /** True iff the best move differs from the last iteration's. */
+        @Label("Changed")
+        boolean changed;
+    }
+
+    /** Execution of one controller command. */
+    @Name("amazons.Command")
+    @Label("Command")
+    @Category(CATEGORY)
+    @Description("Execution of one command by the controller")
+    @StackTrace(false)
+    static class Command extends Event {
+        /** Kind of command: "move" or the command's first word. */
+        @Label("Type")
+        String type;
+    }
+
+    /** Periodic snapshot of counters of allocation-heavy operations. */
+    @Name("amazons.Counters")
+    @Label("Counters")
+    @Category(CATEGORY)
+    @Description("Running totals of allocation-heavy operations")
+    @Period("1 s")
+    @StackTrace(false)
+    static class Counters extends Event {
+        /** Calls of Board.copy so far. */
+        @Label("Board Copies")
+        long boardCopies;
+    }
+}
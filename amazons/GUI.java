@@ -3,6 +3,7 @@ package amazons;
 import ucb.gui2.TopLevel;
 import ucb.gui2.LayoutSpec;
 
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -69,9 +70,16 @@ class GUI extends TopLevel implements View, Reporter {
         }
     }
 
+    /** Return the next command queued by a menu click, or null if there
+     *  is none, without waiting.  Used while the AI is thinking, when the
+     *  widget does not collect moves. */
+    String pollCommand() {
+        return _pendingCommands.poll();
+    }
+
     @Override
-    public void update(Board board) {
-        _widget.update(board);
+    public void boardChanged(List<BoardChange> changes) {
+        _widget.update(changes);
     }
 
     @Override
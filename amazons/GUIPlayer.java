@@ -27,6 +27,16 @@ class GUIPlayer extends Player implements Reporter {
         return _gui.readCommand();
     }
 
+    @Override
+    boolean canPoll() {
+        return true;
+    }
+
+    @Override
+    String pollCommand() {
+        return _gui.pollCommand();
+    }
+
     @Override
     public void reportError(String fmt, Object... args) {
         _gui.reportError(fmt, args);
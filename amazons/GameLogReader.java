@@ -0,0 +1,195 @@
+package amazons;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static amazons.GameLogWriter.*;
+
+/** Reads games written by GameLogWriter, one at a time, replaying each
+ *  into a Board supplied by the caller.  The per-game data (players, seed,
+ *  per-move times and engine statistics) describe the game most recently
+ *  read; the reader reuses its storage from game to game, so that very
+ *  large archives can be scanned without allocating per game.
+ *  @author Dayuan Tang
+ */
+class GameLogReader implements Closeable {
+
+    /** Initial capacity of the per-move arrays. */
+    private static final int INIT_MOVES = 128;
+
+    /** A reader for the log in IN.  Throws IOException if IN does not
+     *  start with a valid header. */
+    GameLogReader(InputStream in) throws IOException {
+        _in = new DataInputStream(new BufferedInputStream(in));
+        if (_in.readInt() != MAGIC) {
+            throw new IOException("not a binary game log");
+        }
+        _version = _in.readShort();
+        if (_version < 1 || _version > VERSION) {
+            throw new IOException("unsupported log version " + _version);
+        }
+        _tag = readTag();
+    }
+
+    /** Read the next game, replaying its moves into BOARD from its
+     *  starting position (resizing BOARD as needed).  Returns false
+     *  (leaving BOARD alone) if there are no more games. */
+    boolean nextGame(Board board) throws IOException {
+        while (_tag != GAME) {
+            if (_tag == -1) {
+                return false;
+            }
+            skipRecord();
+        }
+        _seed = _in.readLong();
+        _startTime = _in.readLong();
+        int size = _version >= 2 ? _in.readByte() : Board.SIZE;
+        byte[] position = null;
+        if (_version >= 3) {
+            if (size < Board.MIN_SIZE || size > Board.SIZE) {
+                throw new IOException("bad board size " + size);
+            }
+            position = new byte[Board.encodedLength(size)];
+            position[0] = (byte) size;
+            _in.readFully(position, 1, position.length - 1);
+        }
+        _white = _in.readUTF();
+        _black = _in.readUTF();
+        _winner = null;
+        _numMoves = 0;
+        if (position == null) {
+            board.setSize(size);
+        } else {
+            try {
+                board.decode(position);
+            } catch (IllegalArgumentException excp) {
+                throw new IOException(excp.getMessage());
+            }
+        }
+        while (true) {
+            _tag = readTag();
+            if (_tag == MOVE) {
+                readMove(board);
+            } else if (_tag == END) {
+                _winner = Piece.values()[_in.readByte()];
+            } else {
+                return true;
+            }
+        }
+    }
+
+    /** Read the body of a MOVE record and make the move on BOARD. */
+    private void readMove(Board board) throws IOException {
+        if (_numMoves == _times.length) {
+            _times = Arrays.copyOf(_times, 2 * _numMoves);
+            _nodes = Arrays.copyOf(_nodes, 2 * _numMoves);
+            _depths = Arrays.copyOf(_depths, 2 * _numMoves);
+        }
+        int index = (_in.readUnsignedByte() << 16) | _in.readUnsignedShort();
+        _times[_numMoves] = _in.readInt();
+        _nodes[_numMoves] = _in.readInt();
+        _depths[_numMoves] = _in.readByte();
+        _numMoves += 1;
+        board.makeMove(Move.mv(index));
+    }
+
+    /** Skip the body of the current record (which is not a GAME), and
+     *  read the next tag. */
+    private void skipRecord() throws IOException {
+        if (_tag == MOVE) {
+            _in.skipBytes(3 + 4 + 4 + 1);
+        } else if (_tag == END) {
+            _in.skipBytes(1);
+        } else {
+            throw new IOException("bad record tag " + _tag);
+        }
+        _tag = readTag();
+    }
+
+    /** Return the next record tag, or -1 at the end of the log. */
+    private int readTag() throws IOException {
+        try {
+            return _in.readByte();
+        } catch (EOFException excp) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** Return the random seed of the last game read. */
+    long seed() {
+        return _seed;
+    }
+
+    /** Return the start time (ms since the epoch) of the last game read. */
+    long startTime() {
+        return _startTime;
+    }
+
+    /** Return the name of the White player of the last game read. */
+    String white() {
+        return _white;
+    }
+
+    /** Return the name of the Black player of the last game read. */
+    String black() {
+        return _black;
+    }
+
+    /** Return the winner of the last game read, or null if it was not
+     *  finished. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return the number of moves in the last game read. */
+    int numMoves() {
+        return _numMoves;
+    }
+
+    /** Return the time (ms since the start of the game) at which move K
+     *  of the last game read was made. */
+    int moveTime(int k) {
+        return _times[k];
+    }
+
+    /** Return the number of positions searched to find move K of the last
+     *  game read (0 if it was not made by an engine). */
+    int moveNodes(int k) {
+        return _nodes[k];
+    }
+
+    /** Return the search depth reached in finding move K of the last game
+     *  read (0 if it was not made by an engine). */
+    int moveDepth(int k) {
+        return _depths[k];
+    }
+
+    /** Source of the log. */
+    private final DataInputStream _in;
+    /** Format version of the log. */
+    private final short _version;
+    /** Tag of the record about to be read, or -1 at end. */
+    private int _tag;
+    /** Header data of the last game read. */
+    private long _seed, _startTime;
+    /** Player names of the last game read. */
+    private String _white, _black;
+    /** Winner of the last game read, or null. */
+    private Piece _winner;
+    /** Number of moves in the last game read. */
+    private int _numMoves;
+    /** Per-move times and node counts of the last game read. */
+    private int[] _times = new int[INIT_MOVES], _nodes = new int[INIT_MOVES];
+    /** Per-move search depths of the last game read. */
+    private byte[] _depths = new byte[INIT_MOVES];
+}
@@ -0,0 +1,200 @@
+package amazons;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/** Writes games in the compact binary log format read by GameLogReader.
+ *  Records are encoded on the caller's thread and handed to a background
+ *  thread that writes them through a buffer, flushing once per batch of
+ *  queued records rather than once per record, so logging a move does
+ *  not wait for the file system unless the writer falls QUEUE_SIZE
+ *  records behind.  An error on the background thread is raised by the
+ *  next call that records something, and by close.
+ *
+ *  The format (all numbers big-endian) is a header consisting of the int
+ *  MAGIC and the short VERSION, followed by records, each starting with a
+ *  tag byte:
+ *      GAME:  seed (long), start time in ms since the epoch (long),
+ *             board size (byte, since version 2), starting position
+ *             (since version 3: the bytes of Board.encode after the
+ *             size), White's and Black's player names (modified UTF-8).
+ *      MOVE:  move index (see Move.index, 3 bytes), ms since the
+ *             start of the game (int), positions searched (int; 0 for
+ *             moves not made by an engine), search depth (byte).
+ *      END:   winner (byte: Piece ordinal).
+ *  @author Dayuan Tang
+ */
+class GameLogWriter implements Closeable {
+
+    /** Identifies a binary game log. */
+    static final int MAGIC = 0x414d5a4c;
+    /** Current format version. */
+    static final short VERSION = 3;
+    /** Record tags. */
+    static final byte GAME = 1, MOVE = 2, END = 3;
+
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Most records waiting to be written. */
+    static final int QUEUE_SIZE = 1 << 12;
+
+    /** Milliseconds between checks for a failure of the writer thread
+     *  while waiting for room in the queue. */
+    private static final long POLL_INTERVAL = 100;
+
+    /** A writer that logs games to OUT. */
+    GameLogWriter(OutputStream out) throws IOException {
+        _out = new DataOutputStream(new BufferedOutputStream(out,
+                                                             BUFFER_SIZE));
+        _out.writeInt(MAGIC);
+        _out.writeShort(VERSION);
+        _thread = new Thread(this::drain, "game log writer");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /** Start a new game seeded with SEED from the initial position on a
+     *  board with SIZE squares on a side, between players named WHITE
+     *  and BLACK.  Throws the error of an earlier write, if any. */
+    void startGame(long seed, int size, String white, String black)
+        throws IOException {
+        startGame(seed, new Board(size).encode(), white, black);
+    }
+
+    /** Start a new game seeded with SEED from POSITION (as produced by
+     *  Board.encode), between players named WHITE and BLACK.  Throws the
+     *  error of an earlier write, if any. */
+    void startGame(long seed, byte[] position, String white, String black)
+        throws IOException {
+        _start = System.currentTimeMillis();
+        DataOutputStream rec = record(GAME);
+        rec.writeLong(seed);
+        rec.writeLong(_start);
+        rec.write(position);
+        rec.writeUTF(white);
+        rec.writeUTF(black);
+        submit();
+    }
+
+    /** Record MOVE, found by a search of NODES positions to depth DEPTH
+     *  (both 0 if not found by an engine).  Throws the error of an
+     *  earlier write, if any. */
+    void move(Move move, long nodes, int depth) throws IOException {
+        DataOutputStream rec = record(MOVE);
+        int index = move.index();
+        rec.writeByte(index >> 16);
+        rec.writeShort(index);
+        rec.writeInt((int) (System.currentTimeMillis() - _start));
+        rec.writeInt((int) Math.min(nodes, Integer.MAX_VALUE));
+        rec.writeByte(depth);
+        submit();
+    }
+
+    /** Record that the current game was won by WINNER.  Throws the error
+     *  of an earlier write, if any. */
+    void endGame(Piece winner) throws IOException {
+        DataOutputStream rec = record(END);
+        rec.writeByte(winner.ordinal());
+        submit();
+    }
+
+    /** Write out all records submitted so far and close the log. */
+    @Override
+    public void close() throws IOException {
+        try {
+            enqueue(CLOSE);
+            _thread.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    /** Return a stream for a new record with tag TAG. */
+    private DataOutputStream record(byte tag) throws IOException {
+        _bytes.reset();
+        _record.writeByte(tag);
+        return _record;
+    }
+
+    /** Queue the record built since the last call to record(), first
+     *  throwing the error of an earlier write, if any. */
+    private void submit() throws IOException {
+        checkFailure();
+        try {
+            enqueue(_bytes.toByteArray());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("game log interrupted");
+        }
+    }
+
+    /** Add REC to the queue, waiting for room, or throw the writer
+     *  thread's error if it fails meanwhile. */
+    private void enqueue(byte[] rec) throws IOException, InterruptedException {
+        while (!_queue.offer(rec, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+    }
+
+    /** Throw the error encountered by the writer thread, if any. */
+    private void checkFailure() throws IOException {
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /** Body of the writer thread: write queued records in batches. */
+    private void drain() {
+        List<byte[]> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(_queue.take());
+                _queue.drainTo(batch);
+                for (byte[] rec : batch) {
+                    if (rec == CLOSE) {
+                        _out.close();
+                        return;
+                    }
+                    _out.write(rec);
+                }
+                _out.flush();
+                batch.clear();
+            }
+        } catch (IOException excp) {
+            _failure = excp;
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Marks the end of the queue. */
+    private static final byte[] CLOSE = new byte[0];
+
+    /** Records waiting to be written. */
+    private final BlockingQueue<byte[]> _queue =
+        new LinkedBlockingQueue<>(QUEUE_SIZE);
+    /** Destination of the log. */
+    private final DataOutputStream _out;
+    /** Background thread that writes _queue to _out. */
+    private final Thread _thread;
+    /** Buffer holding the record being encoded. */
+    private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+    /** Encoder writing into _bytes. */
+    private final DataOutputStream _record = new DataOutputStream(_bytes);
+    /** Start time of the current game. */
+    private long _start;
+    /** Error encountered by the writer thread, if any. */
+    private volatile IOException _failure;
+}
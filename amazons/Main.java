@@ -1,10 +1,12 @@
 package amazons;
 
+import java.util.Arrays;
 import java.util.List;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Path;
 
 import static amazons.Utils.error;
 
@@ -15,14 +17,43 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** Specification of the command-line options (see CommandArgs). */
+    private static final String OPTIONS =
+        "--display --split --log={0,1} --binlog={0,1} --server={0,1}"
+        + " --tablebase={0,1} --size={0,1} --time={0,1} --weights={0,1}"
+        + " --hash={0,1} --hashfile={0,1} --workers={0,1} --={0,2}";
+
+    /** The main program.  ARGS may contain the options --display,
+     *  --split (use split-ply search in the AI), --log=FILE (copy commands
+     *  to FILE), --binlog=FILE (record games in binary to FILE),
+     *  --server=ADDRESS (serve games on ADDRESS, a local TCP port or a
+     *  Unix-domain socket path), --tablebase=FILE (use the endgame
+     *  tablebase in FILE), --size=N (play on an NxN board),
+     *  --time=MOVE/GAME (limit the AI to MOVE seconds per move and half
+     *  of GAME seconds, the limit for both sides, per game),
+     *  --weights=FILE (use the evaluation weights
+     *  in FILE, as written by Tuner), --hash=MB (give the AI a
+     *  transposition table of MB megabytes; with --server, the AI of each
+     *  session, whose default is much smaller), --hashfile=FILE (keep
+     *  the AI's transposition table in FILE from one run to the next;
+     *  --hash gives its size when FILE is first created, and FILE starts
+     *  out empty if it was written with other weights or tablebase), and
+     *  --workers=ADDRESS,... (divide the AI's root moves among the
+     *  SearchWorker processes listening on the given ports or Unix-domain
+     *  socket paths). */
     public static void main(String... args) {
+        Events.register();
 
-        CommandArgs options =
-            new CommandArgs("--display --log={0,1} --={0,2}", args);
+        CommandArgs options = new CommandArgs(OPTIONS, args);
         if (!options.ok()) {
             System.err.println("Usage: java amazons.Main [--display]"
-                               + " [--log=FILE] [INPUT [OUTPUT]]");
+                               + " [--split] [--log=FILE]"
+                               + " [--binlog=FILE] [--server=ADDRESS]"
+                               + " [--tablebase=FILE] [--size=N]"
+                               + " [--time=MOVE/GAME] [--weights=FILE]"
+                               + " [--hash=MB] [--hashfile=FILE]"
+                               + " [--workers=ADDRESS,...]"
+                               + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
 
@@ -41,11 +72,16 @@ public class Main {
             }
         }
 
+        if (options.contains("--server")) {
+            serve(options);
+        }
+
         Controller control = getController(options);
         System.out.println("Amazons 61B, version 1.0");
 
         try {
             control.play();
+            _context.save();
             System.exit(0);
         } catch (IllegalStateException excp) {
             System.err.printf("Internal error: %s%n", excp.getMessage());
@@ -54,6 +90,48 @@ public class Main {
 
     }
 
+    /** Return the AI template described by OPTIONS. */
+    private static AI engine(CommandArgs options) {
+        AI engine = new AI(options.contains("--split"));
+        if (options.contains("--time")) {
+            engine.setClock(TimeManager.parse(options.getFirst("--time")));
+        }
+        if (options.contains("--weights")) {
+            try {
+                engine.setEvaluation(Evaluation.load(
+                    Path.of(options.getFirst("--weights"))));
+            } catch (IOException | IllegalArgumentException excp) {
+                throw error("Could not load weights: %s", excp.getMessage());
+            }
+        }
+        if (options.contains("--tablebase")) {
+            try {
+                engine.setTablebase(Tablebase.load(
+                    Path.of(options.getFirst("--tablebase"))));
+            } catch (IOException | IllegalArgumentException excp) {
+                throw error("Could not load tablebase: %s", excp.getMessage());
+            }
+        }
+        return engine;
+    }
+
+    /** Serve games on the address given by OPTIONS, and exit. */
+    private static void serve(CommandArgs options) {
+        String address = options.getFirst("--server");
+        try {
+            Server server =
+                new Server(Server.open(address), engine(options),
+                           hashBits(options, Server.SESSION_BITS));
+            System.out.printf("Serving games on %s%n", address);
+            server.serve();
+            System.exit(0);
+        } catch (IOException excp) {
+            System.err.printf("Could not serve on %s: %s%n", address,
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
@@ -83,6 +161,69 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer, new AI());
+        AI engine = engine(options);
+        _context = context(options, engine);
+        engine.setContext(_context);
+        if (options.contains("--workers")) {
+            try {
+                engine.setCluster(SearchCluster.connect(Arrays.asList(
+                    options.getFirst("--workers").split(","))));
+            } catch (IOException excp) {
+                throw error("Could not connect to workers: %s",
+                            excp.getMessage());
+            }
+        }
+        Controller control =
+            new Controller(view, log, reporter, manualPlayer, engine);
+        if (options.contains("--size")) {
+            try {
+                control.setBoardSize(Integer.parseInt(
+                    options.getFirst("--size")));
+            } catch (NumberFormatException excp) {
+                throw error("Invalid board size");
+            }
+        }
+        if (options.contains("--binlog")) {
+            try {
+                control.setBinaryLog(new GameLogWriter(
+                    new FileOutputStream(options.getFirst("--binlog"))));
+            } catch (IOException excp) {
+                throw error("Could not open binary log file");
+            }
+        }
+        return control;
+    }
+
+    /** Return the engine context described by OPTIONS for ENGINE. */
+    private static EngineContext context(CommandArgs options, AI engine) {
+        int bits = hashBits(options, EngineContext.DEFAULT_BITS);
+        if (options.contains("--hashfile")) {
+            try {
+                return EngineContext.map(
+                    Path.of(options.getFirst("--hashfile")), bits,
+                    engine.fingerprint());
+            } catch (IOException | IllegalArgumentException excp) {
+                throw error("Could not map hash file: %s",
+                            excp.getMessage());
+            }
+        }
+        return new EngineContext(bits);
+    }
+
+    /** Return the log2 of the number of transposition-table entries given
+     *  by the --hash option in OPTIONS, or DFLT if there is none. */
+    private static int hashBits(CommandArgs options, int dflt) {
+        if (!options.contains("--hash")) {
+            return dflt;
+        }
+        try {
+            return EngineContext.bits(
+                Integer.parseInt(options.getFirst("--hash")));
+        } catch (IllegalArgumentException excp) {
+            throw error("Invalid hash size: %s", excp.getMessage());
+        }
     }
+
+    /** The AI's search context. */
+    private static EngineContext _context;
 }
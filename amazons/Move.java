@@ -14,13 +14,16 @@ import static amazons.Square.SQ;
  */
 final class Move {
 
-    /** The syntax for a move, using either the forms FROM-TO(SPEAR) or
-     *  FROM TO SPEAR.  Either groups 1-3 or 4-6 in a match from this pattern
-     *  contain FROM, TO, and SPEAR (the other 3 groups are null in each
-     *  case. */
-    static final Pattern MOVE_PATTERN =
-        Pattern.compile(String.format("%s-%s\\(%s\\)|%s\\s+%s\\s+%s",
-                                      SQ, SQ, SQ, SQ, SQ, SQ));
+    /** The regular expression for a move, using either the forms
+     *  FROM-TO(SPEAR) or FROM TO SPEAR.  Either groups 1-3 or 4-6 in a
+     *  match from this expression contain FROM, TO, and SPEAR (the other 3
+     *  groups are null in each case).  A constant, so that no formatting
+     *  is needed at startup. */
+    static final String MOVE_SYNTAX =
+        SQ + "-" + SQ + "\\(" + SQ + "\\)|" + SQ + "\\s+" + SQ + "\\s+" + SQ;
+
+    /** The pattern for MOVE_SYNTAX. */
+    static final Pattern MOVE_PATTERN = Pattern.compile(MOVE_SYNTAX);
 
     /** Return the square moved from. */
     Square from() {
@@ -37,25 +40,54 @@ final class Move {
         return _spear;
     }
 
-    /** Return the unique Move FROM-TO(SPEAR). */
+    /** Return the unique Move FROM-TO(SPEAR).  Safe to call from several
+     *  threads at once: a thread that finds no Move (or no row of MOVES)
+     *  creates it while holding the lock on MOVES, and since Moves are
+     *  immutable, one found without the lock is complete. */
     static Move mv(Square from, Square to, Square spear) {
-        if (MOVES[from.index()][to.index()][spear.index()] == null) {
-            MOVES[from.index()][to.index()][spear.index()] =
-                new Move(from, to, spear);
+        int k = from.index() * SQUARES + to.index();
+        Move[] row = MOVES[k];
+        Move result = row == null ? null : row[spear.index()];
+        if (result == null) {
+            synchronized (MOVES) {
+                row = MOVES[k];
+                if (row == null) {
+                    row = MOVES[k] = new Move[SQUARES];
+                }
+                result = row[spear.index()];
+                if (result == null) {
+                    result = new Move(from, to, spear);
+                    row[spear.index()] = result;
+                }
+            }
         }
-        return MOVES[from.index()][to.index()][spear.index()];
+        return result;
+    }
+
+    /** Return the unique Move whose index (see index()) is INDEX. */
+    static Move mv(int index) {
+        return mv(sq(index / (SQUARES * SQUARES)),
+                  sq(index / SQUARES % SQUARES), sq(index % SQUARES));
+    }
+
+    /** Return my index, a number in the range 0 .. SQUARES**3 - 1 that
+     *  identifies me uniquely and is compact enough to store in three
+     *  bytes. */
+    int index() {
+        return (_from.index() * SQUARES + _to.index()) * SQUARES
+            + _spear.index();
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax in which the piece move and spear throw are proper
      *  queen moves, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            int k = _moveMatcher.group(1) != null ? 1 : 4;
-            Square from = sq(_moveMatcher.group(k)),
-                to = sq(_moveMatcher.group(k + 1)),
-                spear = sq(_moveMatcher.group(k + 2));
+        Matcher moveMatcher = MOVE_PATTERN.matcher(str);
+        if (moveMatcher.matches()) {
+            int k = moveMatcher.group(1) != null ? 1 : 4;
+            Square from = sq(moveMatcher.group(k)),
+                to = sq(moveMatcher.group(k + 1)),
+                spear = sq(moveMatcher.group(k + 2));
             if (from.isQueenMove(to) && to.isQueenMove(spear)) {
                 return mv(from, to, spear);
             }
@@ -66,29 +98,43 @@ final class Move {
     /** Return true iff STR has the right format for a Move, ignoring whether
      *  its piece-move and spear-throw are valid queen moves. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return MOVE_PATTERN.matcher(str).matches();
     }
 
     @Override
     public String toString() {
-        return _str;
+        String str = _str;
+        if (str == null) {
+            str = _str = new StringBuilder(MAX_LENGTH).append(_from)
+                .append('-').append(_to).append('(').append(_spear)
+                .append(')').toString();
+        }
+        return str;
     }
 
     /** Construct the Move FROM-TO(SPEAR). */
     private Move(Square from, Square to, Square spear) {
         _from = from; _to = to; _spear = spear;
-        _str = String.format("%s-%s(%s)", from, to, spear);
     }
 
-    /** The cache of all Moves created. */
-    private static final Move[][][] MOVES = new Move[100][100][100];
+    /** The number of squares on a board. */
+    private static final int SQUARES = Board.SIZE * Board.SIZE;
+
+    /** Length of the longest printed Move. */
+    private static final int MAX_LENGTH = "a10-a10(a10)".length();
+
+    /** The cache of all Moves created: MOVES[F * SQUARES + T][S] is the
+     *  Move from the square with index F to that with index T, throwing
+     *  to that with index S.  A row is created with its first Move, since
+     *  only the rows for pairs of squares a queen move apart (or, on a
+     *  small board, fewer) are ever used, and creating all of them would
+     *  take time at startup. */
+    private static final Move[][] MOVES = new Move[SQUARES * SQUARES][];
 
     /** The components of a Move. */
     private final Square _from, _to, _spear;
-    /** The printed form of a Move. */
+    /** The printed form of a Move, or null if it has not been needed
+     *  yet.  Several threads may compute it at once, harmlessly. */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
 
@@ -0,0 +1,19 @@
+package amazons;
+
+/** A Reporter that discards all messages, for headless play.
+ *  @author Dayuan Tang
+ */
+class NullReporter implements Reporter {
+
+    @Override
+    public void reportError(String fmt, Object... args) {
+    }
+
+    @Override
+    public void reportNote(String fmt, Object... args) {
+    }
+
+    @Override
+    public void reportMove(Move move) {
+    }
+}
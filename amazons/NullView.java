@@ -1,11 +1,13 @@
 package amazons;
 
+import java.util.List;
+
 /** A View that does nothing.
  *  @author P. N. Hilfinger
  */
 class NullView implements View {
 
     @Override
-    public void update(Board board) {
+    public void boardChanged(List<BoardChange> changes) {
     }
 }
@@ -1,5 +1,7 @@
 package amazons;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import static amazons.Utils.*;
 
 /** A generic Amazons Player.
@@ -36,6 +38,48 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** As for myMove(), but may give up as soon as possible once
+     *  CANCELLED becomes true, returning null.  Players that do not search
+     *  ignore CANCELLED. */
+    String myMove(AtomicBoolean cancelled) {
+        return myMove();
+    }
+
+    /** Return true iff I choose my moves without consulting a user, so
+     *  that the controller may run myMove on another thread. */
+    boolean isAutomatic() {
+        return false;
+    }
+
+    /** Return true iff pollCommand can deliver commands from my user
+     *  while another player is thinking. */
+    boolean canPoll() {
+        return false;
+    }
+
+    /** Return the next command from my user if one is ready, or null
+     *  (without waiting) if not. */
+    String pollCommand() {
+        return null;
+    }
+
+    /** Return a short description of me, for use in logs. */
+    String name() {
+        return getClass().getSimpleName();
+    }
+
+    /** Return the number of positions examined in choosing my last move,
+     *  or 0 if I do not search. */
+    long lastNodes() {
+        return 0;
+    }
+
+    /** Return the depth searched in choosing my last move, or 0 if I do
+     *  not search. */
+    int lastDepth() {
+        return 0;
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
@@ -0,0 +1,292 @@
+package amazons;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static amazons.AI.INFTY;
+import static amazons.Piece.*;
+
+/** The coordinator of a search divided among SearchWorker processes.
+ *  Each iteration of a search sends every worker the position, and then
+ *  hands out the root moves one at a time, each to the next worker to
+ *  become idle, with the best value found so far as its bound.  Thus
+ *  the workers share the alpha-beta bound as their results arrive, and
+ *  a worker that is given quick moves simply searches more of them.
+ *  Each worker connection has a thread that waits for its answers.
+ *  @author Dayuan Tang
+ */
+class SearchCluster implements Closeable {
+
+    /** Milliseconds between checks of whether to abandon a search. */
+    private static final long POLL_INTERVAL = 10;
+
+    /** A cluster of the workers on CHANNELS. */
+    SearchCluster(List<SocketChannel> channels) {
+        for (SocketChannel channel : channels) {
+            _workers.add(new Worker(channel));
+        }
+    }
+
+    /** Return a cluster of the workers listening on ADDRESSES, each a
+     *  port number on the loopback interface or the path of a
+     *  Unix-domain socket (as for Server.open). */
+    static SearchCluster connect(List<String> addresses) throws IOException {
+        List<SocketChannel> channels = new ArrayList<>();
+        try {
+            for (String address : addresses) {
+                channels.add(SocketChannel.open(socketAddress(address)));
+            }
+            return new SearchCluster(channels);
+        } catch (IOException excp) {
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+            throw excp;
+        }
+    }
+
+    /** Return the socket address denoted by ADDRESS (see connect). */
+    private static SocketAddress socketAddress(String address) {
+        if (address.matches("\\d+")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         Integer.parseInt(address));
+        } else {
+            return UnixDomainSocketAddress.of(Path.of(address));
+        }
+    }
+
+    /** Return the number of my workers. */
+    int size() {
+        return _workers.size();
+    }
+
+    /** Search each of the moves in ROOTS (as Move indices) from BOARD to
+     *  depth DEPTH, using split-ply search iff SPLITPLY, and return the
+     *  position in ROOTS of the best move, leaving the value of each
+     *  move (or a bound showing that it is no better than the best) in
+     *  SCORES.  Abandons the search and returns -1 as soon as possible
+     *  once STOP returns true. */
+    int search(Board board, int depth, boolean splitPly, int[] roots,
+               int[] scores, BooleanSupplier stop) {
+        int sense = board.turn() == WHITE ? 1 : -1;
+        _nodes = 0;
+        byte[] position = board.encode();
+        for (Worker worker : _workers) {
+            worker.sendPosition(splitPly, depth, position);
+        }
+        int best = -1, next = 0, busy = 0;
+        for (Worker worker : _workers) {
+            if (next < roots.length) {
+                worker.sendMove(next, roots[next], -INFTY, INFTY);
+                next += 1;
+                busy += 1;
+            }
+        }
+        while (busy > 0) {
+            Result result = poll();
+            if (result == null) {
+                if (stop.getAsBoolean()) {
+                    cancel(busy);
+                    return -1;
+                }
+                continue;
+            }
+            busy -= 1;
+            _nodes += result.nodes;
+            int slot = result.worker._slot;
+            scores[slot] = result.score;
+            if (best < 0 || AI.better(result.score, scores[best], sense)) {
+                best = slot;
+            }
+            if (next < roots.length) {
+                int bound = scores[best];
+                result.worker.sendMove(next, roots[next],
+                                       sense == 1 ? bound : -INFTY,
+                                       sense == 1 ? INFTY : bound);
+                next += 1;
+                busy += 1;
+            }
+        }
+        return best;
+    }
+
+    /** Return the number of positions examined by my workers in the last
+     *  search. */
+    long lastNodes() {
+        return _nodes;
+    }
+
+    /** Disconnect from my workers. */
+    @Override
+    public void close() throws IOException {
+        for (Worker worker : _workers) {
+            worker.close();
+        }
+    }
+
+    /** Return the next answer from a worker, or null if none arrives
+     *  within POLL_INTERVAL. */
+    private Result poll() {
+        try {
+            Result result =
+                _results.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            if (result != null && result.error != null) {
+                throw new IllegalStateException("search worker failed",
+                                                result.error);
+            }
+            return result;
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Cancel the moves being searched by my BUSY busy workers, and wait
+     *  for their (discarded) answers. */
+    private void cancel(int busy) {
+        for (Worker worker : _workers) {
+            worker.sendCancel();
+        }
+        for (; busy > 0; busy -= 1) {
+            try {
+                Result result = _results.take();
+                if (result.error != null) {
+                    throw new IllegalStateException("search worker failed",
+                                                    result.error);
+                }
+                _nodes += result.nodes;
+            } catch (InterruptedException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+    }
+
+    /** An answer from a worker. */
+    private static class Result {
+        /** The answer from WORKER to its last MOVE: SCORE, after
+         *  examining NODES positions, or if ERROR is not null, the
+         *  failure of the worker. */
+        Result(Worker worker, int score, long nodes, IOException error) {
+            this.worker = worker;
+            this.score = score;
+            this.nodes = nodes;
+            this.error = error;
+        }
+
+        /** The worker that answered. */
+        final Worker worker;
+        /** The value of the move. */
+        final int score;
+        /** Positions examined. */
+        final long nodes;
+        /** The failure of the worker, or null. */
+        final IOException error;
+    }
+
+    /** A connection to one worker. */
+    private class Worker {
+        /** A connection to the worker on CHANNEL. */
+        Worker(SocketChannel channel) {
+            _channel = channel;
+            _in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+            Thread reader = new Thread(this::readResults,
+                                       "search cluster reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /** Send a POSITION with the position ENCODED to be searched to
+         *  depth DEPTH, using split-ply search iff SPLITPLY. */
+        void sendPosition(boolean splitPly, int depth, byte[] encoded) {
+            _message.put(SearchWorker.POSITION).put((byte) (splitPly ? 1 : 0))
+                .put((byte) depth).put(encoded);
+            send();
+        }
+
+        /** Send a MOVE asking for the value of the move with index MOVE,
+         *  with window ALPHA..BETA, the move at position SLOT of the
+         *  roots. */
+        void sendMove(int slot, int move, int alpha, int beta) {
+            _slot = slot;
+            _message.put(SearchWorker.MOVE).putInt(move).putInt(alpha)
+                .putInt(beta);
+            send();
+        }
+
+        /** Send a CANCEL. */
+        void sendCancel() {
+            _message.put(SearchWorker.CANCEL);
+            send();
+        }
+
+        /** Send the contents of _message, and clear it.  Writes go
+         *  straight to the channel: a stream from Channels.newOutputStream
+         *  would wait for my reader, which holds the channel's blocking
+         *  lock while it waits for input. */
+        private void send() {
+            _message.flip();
+            try {
+                while (_message.hasRemaining()) {
+                    _channel.write(_message);
+                }
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            } finally {
+                _message.clear();
+            }
+        }
+
+        /** Close my connection. */
+        void close() throws IOException {
+            _channel.close();
+        }
+
+        /** Pass the worker's answers to the search until the connection
+         *  closes. */
+        private void readResults() {
+            try {
+                while (true) {
+                    int score = _in.readInt();
+                    long nodes = _in.readLong();
+                    _results.add(new Result(this, score, nodes, null));
+                }
+            } catch (IOException excp) {
+                _results.add(new Result(this, 0, 0, excp));
+            }
+        }
+
+        /** The connection to the worker. */
+        private final SocketChannel _channel;
+        /** Input from the worker. */
+        private final DataInputStream _in;
+        /** The message being sent to the worker. */
+        private final ByteBuffer _message =
+            ByteBuffer.allocate(SearchWorker.MAX_MESSAGE);
+        /** Position in the roots of the move being searched. */
+        private int _slot;
+    }
+
+    /** My workers. */
+    private final List<Worker> _workers = new ArrayList<>();
+    /** Answers from the workers, in order of arrival. */
+    private final BlockingQueue<Result> _results =
+        new LinkedBlockingQueue<>();
+    /** Positions examined in the last search. */
+    private long _nodes;
+}
@@ -0,0 +1,238 @@
+package amazons;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ucb.util.CommandArgs;
+
+/** A process that searches root moves on behalf of a SearchCluster in
+ *  another process.  It accepts one coordinator connection at a time on
+ *  a local TCP port or a Unix-domain socket (see Server.open), and keeps
+ *  its transposition table from one request to the next.
+ *
+ *  The protocol is binary (numbers big-endian).  The coordinator sends
+ *  messages, each starting with a tag byte:
+ *      POSITION:  split-ply search (byte: 0 or 1), depth (byte), and
+ *                 the position (as produced by Board.encode).
+ *      MOVE:      move index (int), alpha (int), beta (int): search the
+ *                 move from the last POSITION to its depth with window
+ *                 alpha..beta.
+ *      CANCEL:    abandon the current MOVE as soon as possible.
+ *  The worker answers each MOVE with its score (int; CANCELLED if it was
+ *  cancelled) and the number of positions examined (long).  A
+ *  coordinator sends a MOVE only once the answer to the previous one has
+ *  arrived, so there is at most one search in progress.
+ *  @author Dayuan Tang
+ */
+class SearchWorker {
+
+    /** Message tags. */
+    static final byte POSITION = 1, MOVE = 2, CANCEL = 3;
+
+    /** The score reported for a cancelled MOVE. */
+    static final int CANCELLED = AI.NO_SCORE;
+
+    /** Largest message size, in bytes. */
+    static final int MAX_MESSAGE = 3 + Board.encodedLength(Board.SIZE);
+
+    /** Size of an answer, in bytes. */
+    private static final int ANSWER_SIZE = Integer.BYTES + Long.BYTES;
+
+    /** Number of move indices (see Move.index). */
+    private static final int MOVES = Board.SIZE * Board.SIZE * Board.SIZE
+        * Board.SIZE * Board.SIZE * Board.SIZE;
+
+    /** Serve coordinators as described by ARGS:
+     *      --hash=MB         transposition-table size
+     *      --weights=FILE    evaluation weights, as written by Tuner
+     *      ADDRESS           port number or Unix-domain socket path
+     */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--hash={0,1} --weights={0,1} --={1}", args);
+        if (!options.ok() || !options.contains("--")) {
+            System.err.println("Usage: java amazons.SearchWorker [--hash=MB]"
+                               + " [--weights=FILE] ADDRESS");
+            System.exit(1);
+        }
+        try {
+            int bits = options.contains("--hash")
+                ? EngineContext.bits(Integer.parseInt(
+                      options.getFirst("--hash")))
+                : EngineContext.DEFAULT_BITS;
+            Evaluation evaluation = options.contains("--weights")
+                ? Evaluation.load(Path.of(options.getFirst("--weights")))
+                : Evaluation.DEFAULT;
+            String address = options.getFirst("--");
+            SearchWorker worker =
+                new SearchWorker(Server.open(address), bits, evaluation);
+            System.out.printf("Searching for coordinators on %s%n", address);
+            worker.serve();
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A worker accepting coordinators on CHANNEL, whose transposition
+     *  tables have 2**BITS entries and which scores positions with
+     *  EVALUATION. */
+    SearchWorker(ServerSocketChannel channel, int bits,
+                 Evaluation evaluation) {
+        _channel = channel;
+        for (int split = 0; split < 2; split += 1) {
+            _engines[split] = new AI(split == 1);
+            _engines[split].setContext(new EngineContext(bits));
+            _engines[split].setEvaluation(evaluation);
+        }
+    }
+
+    /** Serve coordinators, one at a time, until my channel is closed. */
+    void serve() {
+        ExecutorService searcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "search worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (_channel.isOpen()) {
+                try (SocketChannel client = _channel.accept()) {
+                    session(client, searcher);
+                } catch (IOException excp) {
+                    if (_channel.isOpen()) {
+                        System.err.printf("Session ended: %s%n",
+                                          excp.getMessage());
+                    }
+                }
+            }
+        } finally {
+            searcher.shutdownNow();
+        }
+    }
+
+    /** Stop accepting coordinators. */
+    void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Answer the requests of the coordinator on CLIENT until it
+     *  disconnects, running searches on SEARCHER so that CANCELs are seen
+     *  while they run.  Answers are written straight to CLIENT, since the
+     *  blocking lock of the channel is held while reading requests.  A
+     *  search still running when the coordinator goes is cancelled, and
+     *  waited for, since the next session uses the same engines. */
+    private void session(SocketChannel client, ExecutorService searcher)
+        throws IOException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(client)));
+        ByteBuffer answer = ByteBuffer.allocate(ANSWER_SIZE);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Board board = new Board();
+        AI engine = _engines[0];
+        int depth = 1;
+        Future<?> search = null;
+        try {
+            while (true) {
+                int tag;
+                try {
+                    tag = in.readByte();
+                } catch (EOFException excp) {
+                    return;
+                }
+                switch (tag) {
+                case POSITION:
+                    engine = _engines[in.readByte() == 0 ? 0 : 1];
+                    depth = in.readByte();
+                    readPosition(in, board);
+                    engine.prepare(board);
+                    break;
+                case MOVE:
+                    int index = in.readInt(),
+                        alpha = in.readInt(), beta = in.readInt();
+                    Move move = index >= 0 && index < MOVES
+                        ? Move.mv(index) : null;
+                    if (!board.isLegal(move)) {
+                        throw new IOException("bad move index " + index);
+                    }
+                    cancelled.set(false);
+                    AI searching = engine;
+                    int searchDepth = depth;
+                    search = searcher.submit(() -> {
+                        int score =
+                            searching.scoreMove(board, move, searchDepth,
+                                                alpha, beta, cancelled);
+                        answer.clear();
+                        answer.putInt(score).putLong(searching.lastNodes())
+                            .flip();
+                        try {
+                            while (answer.hasRemaining()) {
+                                client.write(answer);
+                            }
+                        } catch (IOException excp) {
+                            /* The coordinator has gone, and the session
+                             * will end. */
+                        }
+                    });
+                    break;
+                case CANCEL:
+                    cancelled.set(true);
+                    break;
+                default:
+                    throw new IOException("bad message tag " + tag);
+                }
+            }
+        } finally {
+            cancelled.set(true);
+            await(search);
+        }
+    }
+
+    /** Wait for SEARCH, if not null, to finish. */
+    private static void await(Future<?> search) {
+        if (search == null) {
+            return;
+        }
+        try {
+            search.get();
+        } catch (ExecutionException excp) {
+            System.err.printf("Search failed: %s%n", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Read a position in the form produced by Board.encode from IN into
+     *  BOARD. */
+    private static void readPosition(DataInputStream in, Board board)
+        throws IOException {
+        int side = in.readByte();
+        if (side < Board.MIN_SIZE || side > Board.SIZE) {
+            throw new IOException("bad board size " + side);
+        }
+        byte[] data = new byte[Board.encodedLength(side)];
+        data[0] = (byte) side;
+        in.readFully(data, 1, data.length - 1);
+        try {
+            board.decode(data);
+        } catch (IllegalArgumentException excp) {
+            throw new IOException(excp.getMessage());
+        }
+    }
+
+    /** Channel on which coordinators are accepted. */
+    private final ServerSocketChannel _channel;
+    /** Engines using full-width and split-ply search, in that order. */
+    private final AI[] _engines = new AI[2];
+}
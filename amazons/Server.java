@@ -0,0 +1,134 @@
+package amazons;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** A server that hosts many independent games in one process.  Each
+ *  connection is a session with its own Controller, Board, and players,
+ *  and speaks the same line protocol as the standard input of
+ *  amazons.Main (new, auto, manual, seed, moves, dump, quit), with the
+ *  manual player's commands and the responses travelling over the
+ *  connection.  Sessions run on virtual threads when the JVM has them
+ *  and on a cached pool of platform threads otherwise.  Engine searches
+ *  from all sessions share a pool with one thread per processor, so a
+ *  burst of engine moves cannot starve the sessions that are only
+ *  reading and echoing commands.  Each session's AIs have search
+ *  contexts of their own, with small transposition tables (SESSION_BITS
+ *  by default), so that many sessions fit in the direct memory.
+ *  @author Dayuan Tang
+ */
+class Server {
+
+    /** Default log2 of the number of transposition-table entries of a
+     *  session's AI (256 KB). */
+    static final int SESSION_BITS = 14;
+
+    /** A server accepting sessions on CHANNEL, whose AI players are made
+     *  from AUTOPLAYERTEMPLATE and have transposition tables of 2**BITS
+     *  entries. */
+    Server(ServerSocketChannel channel, AI autoPlayerTemplate, int bits) {
+        _channel = channel;
+        _autoPlayerTemplate = autoPlayerTemplate;
+        _searchPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors());
+        _autoPlayerTemplate.setSearchPool(_searchPool);
+        _autoPlayerTemplate.setContext(null);
+        _autoPlayerTemplate.setContextBits(bits);
+        _sessions = sessionExecutor();
+    }
+
+    /** Return a server channel bound to ADDRESS, which is either a port
+     *  number (for a TCP socket on the loopback interface) or the path of
+     *  a Unix-domain socket (which is replaced if it exists). */
+    static ServerSocketChannel open(String address) throws IOException {
+        if (address.matches("\\d+")) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                               Integer.parseInt(address)),
+                         BACKLOG);
+            return channel;
+        } else {
+            Path path = Path.of(address);
+            Files.deleteIfExists(path);
+            ServerSocketChannel channel =
+                ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.bind(UnixDomainSocketAddress.of(path), BACKLOG);
+            return channel;
+        }
+    }
+
+    /** Accept and run sessions until the server channel is closed. */
+    void serve() {
+        try {
+            while (_channel.isOpen()) {
+                SocketChannel client = _channel.accept();
+                _sessions.execute(() -> session(client));
+            }
+        } catch (IOException excp) {
+            if (_channel.isOpen()) {
+                throw new IllegalStateException(excp);
+            }
+        } finally {
+            _sessions.shutdown();
+            _searchPool.shutdown();
+        }
+    }
+
+    /** Stop accepting new sessions. */
+    void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Play games with the client on CLIENT until it quits or
+     *  disconnects. */
+    private void session(SocketChannel client) {
+        try (client) {
+            PrintStream out =
+                new PrintStream(Channels.newOutputStream(client), true);
+            Scanner in = new Scanner(Channels.newInputStream(client));
+            Controller control =
+                new Controller(new NullView(), null,
+                               new TextReporter(out, out), new TextPlayer(),
+                               _autoPlayerTemplate, in, out);
+            out.println("Amazons 61B, version 1.0");
+            control.play();
+        } catch (IOException | IllegalStateException excp) {
+            System.err.printf("Session ended: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Return an executor that runs each session on a new virtual thread,
+     *  if this JVM supports them, and otherwise on a cached thread pool. */
+    private static ExecutorService sessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Maximum number of pending connections. */
+    private static final int BACKLOG = 1024;
+
+    /** Channel on which sessions are accepted. */
+    private final ServerSocketChannel _channel;
+    /** Template for AI players. */
+    private final AI _autoPlayerTemplate;
+    /** Runs sessions. */
+    private final ExecutorService _sessions;
+    /** Runs engine searches for all sessions. */
+    private final ExecutorService _searchPool;
+}
@@ -71,7 +71,7 @@ final class Square {
         }
         int desCol = this.col() + DIR[dir][0] * steps;
         int desRow = this.row() + DIR[dir][1] * steps;
-        if (desCol < 0 || desCol >= 10 || desRow < 0 || desRow >= 10) {
+        if (!exists(desCol, desRow)) {
             return null;
         }
         return sq(desCol, desRow);
@@ -108,10 +108,10 @@ final class Square {
 
     /** Return the (unique) Square denoting COL ROW. */
     static Square sq(int col, int row) {
-        if (!exists(row, col)) {
+        if (!exists(col, row)) {
             throw error("row or column out of bounds");
         }
-        return sq(col * 10 + row);
+        return sq(col * Board.SIZE + row);
     }
 
     /** Return the (unique) Square denoting the position with index INDEX. */
@@ -141,9 +141,10 @@ final class Square {
     /** Return the Square with index INDEX. */
     private Square(int index) {
         _index = index;
-        _row = index % 10;
-        _col = index / 10;
-        _str = String.format("%c%s", (char) ('a' + _col), 1 + _row);
+        _row = index % Board.SIZE;
+        _col = index / Board.SIZE;
+        _str = new StringBuilder(3).append((char) ('a' + _col))
+            .append(1 + _row).toString();
     }
 
     /** The cache of all created squares, by index. */
@@ -0,0 +1,99 @@
+package amazons;
+
+/** The eight symmetries (rotations and reflections) of a square board,
+ *  numbered 0 to NUM - 1, with 0 the identity.  A board with N squares on
+ *  a side occupies the lower-left corner of the SIZE x SIZE grid of
+ *  Squares; its symmetries map its squares among themselves and leave
+ *  the blocked squares outside it where they are.
+ *  @author Dayuan Tang
+ */
+final class Symmetry {
+
+    /** Number of symmetries. */
+    static final int NUM = 8;
+
+    /** Not instantiated. */
+    private Symmetry() {
+    }
+
+    /** Return the table of the symmetries of a board with SIDE squares
+     *  on a side: element [S][I] is the index of the image of the square
+     *  with index I under symmetry S. */
+    static int[][] map(int side) {
+        return MAPS[side];
+    }
+
+    /** Return the image of S under symmetry SYM of a board with SIDE
+     *  squares on a side. */
+    static Square apply(int sym, Square s, int side) {
+        return Square.sq(MAPS[side][sym][s.index()]);
+    }
+
+    /** Return the image of MOVE under symmetry SYM of a board with SIDE
+     *  squares on a side. */
+    static Move apply(int sym, Move move, int side) {
+        return Move.mv(apply(sym, move.from(), side),
+                       apply(sym, move.to(), side),
+                       apply(sym, move.spear(), side));
+    }
+
+    /** Return the symmetry that undoes symmetry SYM. */
+    static int inverse(int sym) {
+        return INVERSES[sym];
+    }
+
+    /** Return the index of the image of the square at column COL, row
+     *  ROW under symmetry SYM of a board with N squares on a side. */
+    private static int image(int sym, int col, int row, int n) {
+        int c, r;
+        switch (sym) {
+        case 0:
+            c = col; r = row;
+            break;
+        case 1:
+            c = row; r = n - 1 - col;
+            break;
+        case 2:
+            c = n - 1 - col; r = n - 1 - row;
+            break;
+        case 3:
+            c = n - 1 - row; r = col;
+            break;
+        case 4:
+            c = n - 1 - col; r = row;
+            break;
+        case 5:
+            c = col; r = n - 1 - row;
+            break;
+        case 6:
+            c = row; r = col;
+            break;
+        default:
+            c = n - 1 - row; r = n - 1 - col;
+            break;
+        }
+        return Square.sq(c, r).index();
+    }
+
+    /** Inverses of the symmetries: the rotations by 90 and 270 degrees
+     *  undo each other, and the rest are their own inverses. */
+    private static final int[] INVERSES = { 0, 3, 2, 1, 4, 5, 6, 7 };
+
+    /** Tables of symmetries for each board size (see map). */
+    private static final int[][][] MAPS = new int[Board.SIZE + 1][][];
+
+    static {
+        for (int n = Board.MIN_SIZE; n <= Board.SIZE; n += 1) {
+            MAPS[n] = new int[NUM][Board.SIZE * Board.SIZE];
+            for (int sym = 0; sym < NUM; sym += 1) {
+                for (int col = 0; col < Board.SIZE; col += 1) {
+                    for (int row = 0; row < Board.SIZE; row += 1) {
+                        int i = Square.sq(col, row).index();
+                        MAPS[n][sym][i] = col < n && row < n
+                            ? image(sym, col, row, n) : i;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package amazons;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/** A table of the exact values of small closed regions containing a
+ *  single amazon.  Once the board has split into separate regions, the
+ *  only thing that matters about a region held by one amazon is its fill
+ *  length: the largest number of moves the amazon can make in it.  The
+ *  table gives the fill length of every set of squares that fits in a
+ *  BOX x BOX square, for every position of the amazon inside it.
+ *
+ *  The table is computed offline by main() and written to a file that
+ *  consists of the int MAGIC, the int BOX, and then one 4-bit entry per
+ *  (region, amazon) pair, two per byte, indexed by
+ *  (region mask) * CELLS + (amazon cell).  A region mask has bit
+ *  col + BOX * row set for each square of the region, relative to the
+ *  lower-left corner of the region's bounding box.  At run time the file
+ *  is memory-mapped, so loading it costs nothing and the pages are shared
+ *  among all engine processes on a machine.
+ *  @author Dayuan Tang
+ */
+class Tablebase {
+
+    /** Side of the square that a tabulated region must fit in. */
+    static final int BOX = 4;
+    /** Number of cells in the box. */
+    static final int CELLS = BOX * BOX;
+    /** Number of (region, amazon) entries. */
+    static final int ENTRIES = CELLS << CELLS;
+    /** Identifies a tablebase file. */
+    static final int MAGIC = 0x414d5442;
+    /** Length of the file header. */
+    static final int HEADER = 8;
+
+    /** Returned by probe when a position is not covered by the table. */
+    static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /** Write the table to the file named by ARGS[0] (default amazons.tb). */
+    public static void main(String... args) {
+        Path file = Path.of(args.length > 0 ? args[0] : "amazons.tb");
+        try {
+            Files.write(file, generate().array());
+        } catch (IOException excp) {
+            System.err.printf("Could not write %s: %s%n", file,
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A tablebase whose contents (header included) are TABLE. */
+    Tablebase(ByteBuffer table) {
+        if (table.capacity() != HEADER + ENTRIES / 2
+            || table.getInt(0) != MAGIC || table.getInt(4) != BOX) {
+            throw Utils.error("not a tablebase for %dx%d regions", BOX, BOX);
+        }
+        _table = table;
+    }
+
+    /** Return the tablebase in FILE, memory-mapped read-only. */
+    static Tablebase load(Path file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY,
+                                             0, channel.size()));
+        }
+    }
+
+    /** Return the contents of a tablebase file, computed from scratch. */
+    static ByteBuffer generate() {
+        byte[] fill = new byte[ENTRIES];
+        for (int mask = 1; mask < 1 << CELLS; mask += 1) {
+            for (int pos = 0; pos < CELLS; pos += 1) {
+                if ((mask & (1 << pos)) != 0) {
+                    fill[mask * CELLS + pos] = (byte) fillLength(fill, mask,
+                                                                 pos);
+                }
+            }
+        }
+        ByteBuffer result = ByteBuffer.allocate(HEADER + ENTRIES / 2);
+        result.putInt(MAGIC).putInt(BOX);
+        for (int i = 0; i < ENTRIES; i += 2) {
+            result.put((byte) (fill[i] | (fill[i + 1] << 4)));
+        }
+        return result;
+    }
+
+    /** Return the fill length of region MASK with the amazon on cell POS,
+     *  given the fill lengths FILL of all smaller masks. */
+    private static int fillLength(byte[] fill, int mask, int pos) {
+        int best = 0;
+        int empty = mask & ~(1 << pos);
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int to = step(pos, dir);
+                 to >= 0 && (empty & (1 << to)) != 0; to = step(to, dir)) {
+                int open = mask & ~(1 << to);
+                for (int sdir = 0; sdir < 8; sdir += 1) {
+                    for (int sp = step(to, sdir);
+                         sp >= 0 && (open & (1 << sp)) != 0;
+                         sp = step(sp, sdir)) {
+                        best = Math.max(best,
+                                        1 + fill[(mask & ~(1 << sp)) * CELLS
+                                                 + to]);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return the cell one step from CELL in direction DIR (as for
+     *  Square.queenMove), or -1 if that leaves the box. */
+    private static int step(int cell, int dir) {
+        int col = cell % BOX + DCOL[dir], row = cell / BOX + DROW[dir];
+        if (col < 0 || col >= BOX || row < 0 || row >= BOX) {
+            return -1;
+        }
+        return col + BOX * row;
+    }
+
+    /** Return the fill length of region MASK with the amazon on cell
+     *  POS. */
+    int fillLength(int mask, int pos) {
+        int index = mask * CELLS + pos;
+        int b = _table.get(HEADER + index / 2);
+        return (index % 2 == 0 ? b : b >> 4) & 0xf;
+    }
+
+    /** Return the exact value of BOARD if it has divided into regions that
+     *  each contain amazons of only one player and the table covers all of
+     *  them, and otherwise UNKNOWN.  The value is positive if White wins
+     *  and negative if Black does; its magnitude is WIN plus the
+     *  difference between the two sides' total fill lengths.  Uses
+     *  SCRATCH, which no other thread may be using, for its work. */
+    int probe(Board board, int win, Scratch scratch) {
+        scratch.nextStamp();
+        int white = 0, black = 0;
+        for (Piece side : SIDES) {
+            for (int k = 0; k < board.numAmazons(side); k += 1) {
+                Square s = board.amazon(side, k);
+                if (scratch._marks[s.index()] == scratch._stamp) {
+                    continue;
+                }
+                int fill = regionFill(board, s, scratch);
+                if (fill < 0) {
+                    return UNKNOWN;
+                } else if (side == WHITE) {
+                    white += fill;
+                } else {
+                    black += fill;
+                }
+            }
+        }
+        Piece toMove = board.turn();
+        int mine = toMove == WHITE ? white : black,
+            theirs = toMove == WHITE ? black : white;
+        boolean whiteWins = (mine > theirs) == (toMove == WHITE);
+        return whiteWins ? win + Math.abs(white - black)
+            : -win - Math.abs(white - black);
+    }
+
+    /** As for probe(BOARD, WIN, SCRATCH), with scratch space of its
+     *  own. */
+    int probe(Board board, int win) {
+        return probe(board, win, new Scratch());
+    }
+
+    /** Return the fill length of the region of BOARD containing the amazon
+     *  on START, marking the squares of the region in SCRATCH, or -1 if
+     *  the region contains another amazon or does not fit in the box. */
+    private int regionFill(Board board, Square start, Scratch scratch) {
+        Square[] region = scratch._region;
+        int[] marks = scratch._marks;
+        int stamp = scratch._stamp;
+        int size = 0, minCol = start.col(), maxCol = start.col(),
+            minRow = start.row(), maxRow = start.row();
+        region[size++] = start;
+        marks[start.index()] = stamp;
+        for (int k = 0; k < size; k += 1) {
+            Square s = region[k];
+            for (int dir = 0; dir < 8; dir += 1) {
+                Square n = s.queenMove(dir, 1);
+                if (n == null || marks[n.index()] == stamp) {
+                    continue;
+                }
+                Piece p = board.get(n);
+                if (p == SPEAR) {
+                    continue;
+                } else if (p != EMPTY || size == CELLS) {
+                    return -1;
+                }
+                minCol = Math.min(minCol, n.col());
+                maxCol = Math.max(maxCol, n.col());
+                minRow = Math.min(minRow, n.row());
+                maxRow = Math.max(maxRow, n.row());
+                if (maxCol - minCol >= BOX || maxRow - minRow >= BOX) {
+                    return -1;
+                }
+                marks[n.index()] = stamp;
+                region[size++] = n;
+            }
+        }
+        int mask = 0;
+        for (int k = 0; k < size; k += 1) {
+            mask |= 1 << (region[k].col() - minCol
+                          + BOX * (region[k].row() - minRow));
+        }
+        return fillLength(mask, start.col() - minCol
+                          + BOX * (start.row() - minRow));
+    }
+
+    /** Working storage for probe, kept by its caller (one per searching
+     *  thread) so that probing a leaf allocates nothing.  A square is
+     *  marked as seen by the current probe by setting its mark to the
+     *  probe's stamp, so the marks need no clearing between probes. */
+    static final class Scratch {
+        /** Start a new probe, whose marks are all clear. */
+        private void nextStamp() {
+            _stamp += 1;
+            if (_stamp == 0) {
+                Arrays.fill(_marks, 0);
+                _stamp = 1;
+            }
+        }
+
+        /** Stamp of the current probe. */
+        private int _stamp;
+        /** The stamp of the last probe to reach each square, indexed by
+         *  Square index. */
+        private final int[] _marks = new int[Board.SIZE * Board.SIZE];
+        /** The squares of the region being measured. */
+        private final Square[] _region = new Square[CELLS];
+    }
+
+    /** The two sides. */
+    private static final Piece[] SIDES = { WHITE, BLACK };
+
+    /** Column and row changes for one step in each direction, as for
+     *  Square.queenMove. */
+    private static final int[]
+        DCOL = { 0, 1, 1, 1, 0, -1, -1, -1 },
+        DROW = { 1, 1, 0, -1, -1, -1, 0, 1 };
+
+    /** The table, header included. */
+    private final ByteBuffer _table;
+}
@@ -0,0 +1,160 @@
+package amazons;
+
+import static java.lang.Math.*;
+
+import static amazons.Piece.*;
+
+/** Allocates thinking time to the moves of one AI under a per-move and a
+ *  per-game time limit.  The game limit is for the whole game, as the
+ *  testing harness counts it, so each side may use only half of it.
+ *  Before each move, startMove sets two budgets: a
+ *  soft one, the share of the remaining game time that this move
+ *  deserves given how many moves the game probably has left, and a hard
+ *  one that the search must never exceed.  An iteratively deepening search
+ *  asks keepSearching before each new iteration (which stretches the soft
+ *  budget when the best move keeps changing, and refuses once another
+ *  iteration probably cannot finish in time) and polls outOfTime while
+ *  searching.  endMove charges the time used against the game clock,
+ *  counting from the start of the move rather than of its search.
+ *  @author Dayuan Tang
+ */
+class TimeManager {
+
+    /** Default time limits, in milliseconds. */
+    static final long MOVE_LIMIT = 10000, GAME_LIMIT = 60000;
+
+    /** Fraction of a limit that we are willing to use, leaving a margin for
+     *  the time taken to report the move. */
+    private static final double SAFETY = 0.8;
+
+    /** Fewest moves that we assume are left in the game. */
+    private static final int MIN_MOVES_TO_GO = 4;
+
+    /** Each move fills one empty square, so each side has at most one
+     *  move for every EMPTIES_PER_MOVE empty squares left on the board. */
+    private static final int EMPTIES_PER_MOVE = 2;
+
+    /** Largest factor by which instability may stretch the soft budget. */
+    private static final double MAX_STRETCH = 3;
+
+    /** Factor by which each change of best move stretches the soft
+     *  budget. */
+    private static final double STRETCH = 1.5;
+
+    /** A new iteration is started only if less than this fraction of the
+     *  soft budget has been used (since each iteration takes several times
+     *  as long as the one before). */
+    private static final double ITERATION_FRACTION = 0.4;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS = 1000000;
+
+    /** Milliseconds per second. */
+    private static final double MILLIS = 1000;
+
+    /** A time manager with the default limits. */
+    TimeManager() {
+        this(MOVE_LIMIT, GAME_LIMIT);
+    }
+
+    /** A time manager allowing at most MOVELIMIT ms per move and GAMELIMIT
+     *  ms for the whole game (both sides). */
+    TimeManager(long moveLimit, long gameLimit) {
+        _moveLimit = moveLimit;
+        _gameLimit = gameLimit;
+        _remaining = gameLimit / 2;
+    }
+
+    /** Return a time manager with the limits in SPEC, which has the form
+     *  MOVE/GAME, giving the per-move and per-game limits in seconds. */
+    static TimeManager parse(String spec) {
+        String[] parts = spec.split("/");
+        try {
+            if (parts.length == 2) {
+                return new TimeManager(
+                    (long) (Double.parseDouble(parts[0]) * MILLIS),
+                    (long) (Double.parseDouble(parts[1]) * MILLIS));
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw Utils.error("bad time limits: %s", spec);
+    }
+
+    /** Return a fresh time manager with my limits, for a new game. */
+    TimeManager copy() {
+        return new TimeManager(_moveLimit, _gameLimit);
+    }
+
+    /** Start timing a move in the position BOARD, beginning now. */
+    void startMove(Board board) {
+        startMove(board, System.nanoTime());
+    }
+
+    /** Start timing a move in the position BOARD that began at START
+     *  (from System.nanoTime), which may be before its search begins,
+     *  as when the search waits for a thread. */
+    void startMove(Board board, long start) {
+        _start = start;
+        int empties = 0;
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            if (board.get(Square.sq(i)) == EMPTY) {
+                empties += 1;
+            }
+        }
+        int movesToGo = max(MIN_MOVES_TO_GO, empties / EMPTIES_PER_MOVE);
+        _hard = (long) (SAFETY * min(_moveLimit, _remaining / 2.0));
+        _soft = min(_hard, (long) (SAFETY * _remaining / movesToGo));
+        _stretch = 1;
+    }
+
+    /** Return true iff another search iteration should be started, given
+     *  that the last one CHANGED the best move. */
+    boolean keepSearching(boolean changed) {
+        if (changed) {
+            _stretch = min(MAX_STRETCH, _stretch * STRETCH);
+        }
+        return elapsed() < ITERATION_FRACTION * min(_hard, _soft * _stretch);
+    }
+
+    /** Return true iff the current search must stop now. */
+    boolean outOfTime() {
+        return elapsed() >= _hard;
+    }
+
+    /** Finish timing the current move, charging it to the game clock. */
+    void endMove() {
+        _remaining = max(0, _remaining - elapsed());
+    }
+
+    /** Return the soft budget of the current move, in ms. */
+    long softLimit() {
+        return _soft;
+    }
+
+    /** Return the hard budget of the current move, in ms. */
+    long hardLimit() {
+        return _hard;
+    }
+
+    /** Return my side's game time left, in ms. */
+    long remaining() {
+        return _remaining;
+    }
+
+    /** Return the time spent on the current move, in ms. */
+    long elapsed() {
+        return (System.nanoTime() - _start) / NANOS;
+    }
+
+    /** Time limits, in ms. */
+    private final long _moveLimit, _gameLimit;
+    /** My side's game time left before the current move, in ms. */
+    private long _remaining;
+    /** Start of the current move, from System.nanoTime. */
+    private long _start;
+    /** Budgets of the current move, in ms. */
+    private long _soft, _hard;
+    /** Current stretch factor of the soft budget. */
+    private double _stretch;
+}
@@ -0,0 +1,311 @@
+package amazons;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static java.lang.Math.*;
+
+import static amazons.Piece.*;
+
+import ucb.util.CommandArgs;
+
+/** A headless match between two engine configurations, played as many
+ *  games at once inside one JVM.  Games are played in pairs: each pair
+ *  starts from the same randomly chosen opening, once with each engine
+ *  playing White.  At the end (or as soon as the sequential probability
+ *  ratio test reaches a decision) the runner reports the score, an Elo
+ *  estimate with a 95% confidence interval, and the SPRT log-likelihood
+ *  ratio.
+ *  @author Dayuan Tang
+ */
+class Tournament {
+
+    /** Default number of games. */
+    private static final int DEFAULT_GAMES = 100;
+
+    /** Default number of random plies played before the engines take
+     *  over. */
+    private static final int DEFAULT_PLIES = 2;
+
+    /** Default SPRT hypotheses, in Elo. */
+    private static final double DEFAULT_ELO0 = 0, DEFAULT_ELO1 = 20;
+
+    /** Default engine time limits: short games, so that matches are
+     *  quick. */
+    private static final String DEFAULT_TIME = "1/6";
+
+    /** SPRT error rates (type I and type II). */
+    private static final double ALPHA = 0.05, BETA = 0.05;
+
+    /** Number of standard errors in a 95% confidence interval. */
+    private static final double Z95 = 1.96;
+
+    /** Run a match as described by ARGS:
+     *      --first=ENGINE  --second=ENGINE   engines ("full" or "split",
+     *                                        optionally with ":WEIGHTS")
+     *      --games=N                         number of games
+     *      --threads=N                       games played at once
+     *      --plies=N                         random opening plies
+     *      --seed=N                          seed for the openings
+     *      --elo0=E  --elo1=E                SPRT hypotheses
+     *      --time=MOVE/GAME                  engine time limits (seconds)
+     */
+    public static void main(String... args) {
+        Events.register();
+        CommandArgs options =
+            new CommandArgs("--first={0,1} --second={0,1} --games={0,1}"
+                            + " --threads={0,1} --plies={0,1} --seed={0,1}"
+                            + " --elo0={0,1} --elo1={0,1} --time={0,1}",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java amazons.Tournament"
+                               + " [--first=ENGINE] [--second=ENGINE]"
+                               + " [--games=N] [--threads=N] [--plies=N]"
+                               + " [--seed=N] [--elo0=E] [--elo1=E]"
+                               + " [--time=MOVE/GAME]");
+            System.exit(1);
+        }
+        try {
+            TimeManager clock =
+                TimeManager.parse(option(options, "--time", DEFAULT_TIME));
+            Tournament match =
+                new Tournament(engine(option(options, "--first", "split"),
+                                      clock),
+                               engine(option(options, "--second", "full"),
+                                      clock),
+                               Long.parseLong(option(options, "--seed",
+                                                     "0")));
+            match.setPlies(Integer.parseInt(option(options, "--plies",
+                                                   "" + DEFAULT_PLIES)));
+            match.setHypotheses(
+                Double.parseDouble(option(options, "--elo0",
+                                          "" + DEFAULT_ELO0)),
+                Double.parseDouble(option(options, "--elo1",
+                                          "" + DEFAULT_ELO1)));
+            int threads = Runtime.getRuntime().availableProcessors();
+            match.play(Integer.parseInt(option(options, "--games",
+                                               "" + DEFAULT_GAMES)),
+                       Integer.parseInt(option(options, "--threads",
+                                               "" + threads)));
+            System.out.println(match.summary());
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the value of option NAME in OPTIONS, or DFLT if absent. */
+    private static String option(CommandArgs options, String name,
+                                 String dflt) {
+        return options.contains(name) ? options.getFirst(name) : dflt;
+    }
+
+    /** Return a template for the engine described by SPEC, with time
+     *  limits taken from CLOCK.  SPEC is "full" or "split", optionally
+     *  followed by ":FILE" to use the evaluation weights in FILE. */
+    static Player engine(String spec, TimeManager clock) {
+        AI result;
+        int colon = spec.indexOf(':');
+        String kind = colon < 0 ? spec : spec.substring(0, colon);
+        switch (kind) {
+        case "full":
+            result = new AI(false);
+            break;
+        case "split":
+            result = new AI(true);
+            break;
+        default:
+            throw Utils.error("unknown engine: %s", spec);
+        }
+        result.setClock(clock);
+        if (colon >= 0) {
+            try {
+                result.setEvaluation(Evaluation.load(
+                    Path.of(spec.substring(colon + 1))));
+            } catch (IOException excp) {
+                throw Utils.error("could not read weights: %s",
+                                  excp.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /** A match between the engines made by the templates FIRST and
+     *  SECOND, with openings chosen using SEED. */
+    Tournament(Player first, Player second, long seed) {
+        _first = first;
+        _second = second;
+        _seed = seed;
+        _plies = DEFAULT_PLIES;
+        setHypotheses(DEFAULT_ELO0, DEFAULT_ELO1);
+    }
+
+    /** Play PLIES random plies before handing the game to the engines. */
+    void setPlies(int plies) {
+        _plies = plies;
+    }
+
+    /** Use ELO0 and ELO1 (the Elo advantage of the first engine) as the
+     *  null and alternative hypotheses of the SPRT. */
+    void setHypotheses(double elo0, double elo1) {
+        _elo0 = elo0;
+        _elo1 = elo1;
+    }
+
+    /** Play GAMES games, THREADS at a time, stopping early if the SPRT
+     *  reaches a decision.  Games still being played then are abandoned,
+     *  their engines' searches cancelled. */
+    void play(int games, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<Integer> results =
+            new ExecutorCompletionService<>(pool);
+        AtomicBoolean stopped = new AtomicBoolean();
+        for (int g = 0; g < games; g += 1) {
+            final int game = g;
+            results.submit(() -> playGame(game, stopped));
+        }
+        try {
+            for (int g = 0; g < games; g += 1) {
+                record(results.take().get());
+                if (decision() != 0) {
+                    break;
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            stopped.set(true);
+            pool.shutdownNow();
+        }
+    }
+
+    /** Play game number GAME and return 1 if the first engine won and 0
+     *  otherwise.  The first engine has White in even-numbered games. A
+     *  player that makes an illegal move or fails to move loses.  The
+     *  game is abandoned, returning 0, once STOPPED becomes true. */
+    private int playGame(int game, AtomicBoolean stopped) {
+        boolean firstIsWhite = game % 2 == 0;
+        Controller control =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new TextPlayer(), _first);
+        playOpening(control.board(), _plies, new Random(_seed + game / 2));
+        Piece winner;
+        try {
+            winner = firstIsWhite
+                ? control.playOut(_first, _second, stopped)
+                : control.playOut(_second, _first, stopped);
+        } catch (IllegalArgumentException excp) {
+            winner = control.board().turn().opponent();
+        }
+        if (winner == null) {
+            return 0;
+        }
+        return (winner == WHITE) == firstIsWhite ? 1 : 0;
+    }
+
+    /** Make PLIES random legal moves on BOARD, chosen using RANDOM. */
+    static void playOpening(Board board, int plies, Random random) {
+        for (int i = 0; i < plies && board.winner() == null; i += 1) {
+            List<Move> moves =
+                board.legalMoveStream().collect(Collectors.toList());
+            board.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+    }
+
+    /** Record the RESULT (1 for a win by the first engine, 0 for a loss)
+     *  of one game. */
+    synchronized void record(int result) {
+        _wins += result;
+        _losses += 1 - result;
+    }
+
+    /** Return 1 if the SPRT accepts ELO1, -1 if it accepts ELO0, and 0 if
+     *  more games are needed. */
+    synchronized int decision() {
+        double llr = llr(_wins, _losses, _elo0, _elo1);
+        if (llr >= log((1 - BETA) / ALPHA)) {
+            return 1;
+        } else if (llr <= log(BETA / (1 - ALPHA))) {
+            return -1;
+        } else {
+            return 0;
+        }
+    }
+
+    /** Return a report of the results so far. */
+    synchronized String summary() {
+        int games = _wins + _losses;
+        if (games == 0) {
+            return "No games played.";
+        }
+        double score = (double) _wins / games;
+        double margin = Z95 * sqrt(score * (1 - score) / games);
+        String verdict;
+        switch (decision()) {
+        case 1:
+            verdict = "H1 accepted";
+            break;
+        case -1:
+            verdict = "H0 accepted";
+            break;
+        default:
+            verdict = "inconclusive";
+            break;
+        }
+        return String.format("Games: %d  first: %d  second: %d"
+                             + "  score: %.1f%%%n"
+                             + "Elo: %.1f [%.1f, %.1f]%n"
+                             + "SPRT(%.1f, %.1f): LLR %.2f [%.2f, %.2f] %s",
+                             games, _wins, _losses, 100 * score,
+                             elo(score), elo(score - margin),
+                             elo(score + margin),
+                             _elo0, _elo1, llr(_wins, _losses, _elo0, _elo1),
+                             log(BETA / (1 - ALPHA)), log((1 - BETA) / ALPHA),
+                             verdict);
+    }
+
+    /** Return the Elo difference corresponding to an expected SCORE
+     *  (a fraction between 0 and 1). */
+    static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        } else if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * log10(1 / score - 1);
+    }
+
+    /** Return the expected score of a player that is ELO points stronger
+     *  than its opponent. */
+    static double expectedScore(double elo) {
+        return 1 / (1 + pow(10, -elo / 400));
+    }
+
+    /** Return the log-likelihood ratio of hypotheses ELO1 versus ELO0
+     *  given WINS wins and LOSSES losses.  Amazons has no draws, so the
+     *  results are binomial. */
+    static double llr(int wins, int losses, double elo0, double elo1) {
+        double p0 = expectedScore(elo0), p1 = expectedScore(elo1);
+        return wins * log(p1 / p0) + losses * log((1 - p1) / (1 - p0));
+    }
+
+    /** Templates for the two engines. */
+    private final Player _first, _second;
+    /** Seed for choosing openings. */
+    private final long _seed;
+    /** Number of random opening plies. */
+    private int _plies;
+    /** SPRT hypotheses. */
+    private double _elo0, _elo1;
+    /** Games won and lost by the first engine. */
+    private int _wins, _losses;
+}
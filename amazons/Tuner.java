@@ -0,0 +1,332 @@
+package amazons;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.Math.*;
+
+import static amazons.Piece.*;
+
+import ucb.util.CommandArgs;
+
+/** An offline tool that fits the weights of Evaluation to game outcomes
+ *  by Texel's method: it collects positions from finished games, each
+ *  labelled 1 if White went on to win and 0 if not, and minimizes the
+ *  mean squared difference between the labels and sigmoid(K * score),
+ *  where score is the evaluation of the position.  K is first fitted to
+ *  the default weights, so that the tuned weights stay on the same scale.
+ *  The games come from binary game logs, from self-play games that the
+ *  tool plays itself (in parallel), or both; the error and its gradient
+ *  are also computed in parallel, over slices of the positions.
+ *  @author Dayuan Tang
+ */
+class Tuner {
+
+    /** Default output file. */
+    private static final String DEFAULT_OUTPUT = "amazons.weights";
+
+    /** Default number of optimization steps. */
+    private static final int DEFAULT_ITERATIONS = 2000;
+
+    /** Default engine time limits for self-play games. */
+    private static final String DEFAULT_TIME = "0.1/3";
+
+    /** Default number of random opening plies in self-play games. */
+    private static final int DEFAULT_PLIES = 4;
+
+    /** Step size and moment decay rates of the optimizer (Adam). */
+    private static final double RATE = 0.2, DECAY1 = 0.9, DECAY2 = 0.999,
+        EPSILON = 1e-8;
+
+    /** Range of scale factors K considered. */
+    private static final double MIN_SCALE = 1e-6, MAX_SCALE = 1;
+
+    /** Number of refinements made when fitting K. */
+    private static final int SCALE_STEPS = 60;
+
+    /** Tune as described by ARGS:
+     *      --load=FILE        read games from the binary game log FILE
+     *      --generate=N       play N self-play games
+     *      --save=FILE        write the self-play games to FILE
+     *      --threads=N        games played and slices evaluated at once
+     *      --time=MOVE/GAME   self-play time limits (seconds)
+     *      --plies=N          random opening plies in self-play games
+     *      --seed=N           seed for the self-play openings
+     *      --iterations=N     optimization steps
+     *      --output=FILE      where to write the weights
+     */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--load={0,1} --generate={0,1} --save={0,1}"
+                            + " --threads={0,1} --time={0,1} --plies={0,1}"
+                            + " --seed={0,1} --iterations={0,1}"
+                            + " --output={0,1}", args);
+        if (!options.ok()) {
+            System.err.println("Usage: java amazons.Tuner [--load=FILE]"
+                               + " [--generate=N] [--save=FILE]"
+                               + " [--threads=N] [--time=MOVE/GAME]"
+                               + " [--plies=N] [--seed=N]"
+                               + " [--iterations=N] [--output=FILE]");
+            System.exit(1);
+        }
+        int threads = Integer.parseInt(
+            option(options, "--threads",
+                   "" + Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Tuner tuner = new Tuner(pool, threads);
+            if (options.contains("--load")) {
+                tuner.load(Path.of(options.getFirst("--load")));
+            }
+            if (options.contains("--generate")) {
+                GameLogWriter log = options.contains("--save")
+                    ? new GameLogWriter(new FileOutputStream(
+                          options.getFirst("--save")))
+                    : null;
+                tuner.generate(
+                    Integer.parseInt(options.getFirst("--generate")),
+                    TimeManager.parse(option(options, "--time",
+                                             DEFAULT_TIME)),
+                    Integer.parseInt(option(options, "--plies",
+                                            "" + DEFAULT_PLIES)),
+                    Long.parseLong(option(options, "--seed", "0")), log);
+                if (log != null) {
+                    log.close();
+                }
+            }
+            if (tuner.size() == 0) {
+                throw Utils.error("no positions to tune on");
+            }
+            System.out.printf("%d positions%n", tuner.size());
+            Evaluation result = tuner.tune(Integer.parseInt(
+                option(options, "--iterations", "" + DEFAULT_ITERATIONS)));
+            System.out.printf("Weights: %s%n", result);
+            result.save(Path.of(option(options, "--output",
+                                       DEFAULT_OUTPUT)));
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the value of option NAME in OPTIONS, or DFLT if absent. */
+    private static String option(CommandArgs options, String name,
+                                 String dflt) {
+        return options.contains(name) ? options.getFirst(name) : dflt;
+    }
+
+    /** A tuner with no positions that does its work on POOL, dividing it
+     *  into SLICES parts. */
+    Tuner(ExecutorService pool, int slices) {
+        _pool = pool;
+        _slices = slices;
+    }
+
+    /** Return the number of positions collected. */
+    int size() {
+        return _size;
+    }
+
+    /** Add the positions of the finished games in the binary game log
+     *  FILE. */
+    void load(Path file) throws IOException {
+        try (GameLogReader reader =
+             new GameLogReader(new FileInputStream(file.toFile()))) {
+            Board board = new Board();
+            while (reader.nextGame(board)) {
+                if (reader.winner() != null) {
+                    addGame(board);
+                }
+            }
+        }
+    }
+
+    /** Add the positions of GAMES self-play games between AIs using
+     *  split-ply search with time limits from CLOCK, starting from PLIES
+     *  random plies chosen using SEED, and record the games in LOG if it
+     *  is not null. */
+    void generate(int games, TimeManager clock, int plies, long seed,
+                  GameLogWriter log) throws IOException {
+        AI engine = new AI(true);
+        engine.setClock(clock);
+        List<Future<Board>> results = new ArrayList<>();
+        for (int g = 0; g < games; g += 1) {
+            final int game = g;
+            results.add(_pool.submit(() -> {
+                Controller control =
+                    new Controller(new NullView(), null, new NullReporter(),
+                                   new TextPlayer(), engine);
+                Tournament.playOpening(control.board(), plies,
+                                       new Random(seed + game));
+                control.playOut(engine, engine);
+                return control.board();
+            }));
+        }
+        try {
+            for (int g = 0; g < games; g += 1) {
+                Board board = results.get(g).get();
+                addGame(board);
+                if (log != null) {
+                    log.startGame(seed + g, board.size(), engine.name(),
+                                  engine.name());
+                    for (int k = 0; k < board.numMoves(); k += 1) {
+                        log.move(board.move(k), 0, 0);
+                    }
+                    log.endGame(board.winner());
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Add the positions of the game on BOARD, which must be finished. */
+    void addGame(Board board) {
+        double result = board.winner() == WHITE ? 1 : 0;
+        Board replay = board.snapshot();
+        while (replay.numMoves() > 0) {
+            replay.undo();
+        }
+        for (int k = 0; k < board.numMoves(); k += 1) {
+            if (_size == _results.length) {
+                _results = Arrays.copyOf(_results, 2 * _size);
+                _features = Arrays.copyOf(_features,
+                                          2 * _size * NUM_FEATURES);
+            }
+            System.arraycopy(features(replay), 0, _features,
+                             _size * NUM_FEATURES, NUM_FEATURES);
+            _results[_size] = result;
+            _size += 1;
+            replay.makeMove(board.move(k));
+        }
+    }
+
+    /** Return the features of BOARD. */
+    private static int[] features(Board board) {
+        int[] result = new int[NUM_FEATURES];
+        Evaluation.features(board, result);
+        return result;
+    }
+
+    /** Return weights fitted to my positions by ITERATIONS optimization
+     *  steps, starting from the default weights. */
+    Evaluation tune(int iterations) {
+        double[] weights = new double[NUM_FEATURES];
+        for (int k = 0; k < NUM_FEATURES; k += 1) {
+            weights[k] = Evaluation.DEFAULT.weight(k);
+        }
+        double scale = fitScale(weights);
+        System.out.printf("K = %.3g, initial error %.6f%n", scale,
+                          errorAndGradient(weights, scale)[0]);
+        double[] m = new double[NUM_FEATURES], v = new double[NUM_FEATURES];
+        for (int t = 1; t <= iterations; t += 1) {
+            double[] g = errorAndGradient(weights, scale);
+            for (int k = 0; k < NUM_FEATURES; k += 1) {
+                m[k] = DECAY1 * m[k] + (1 - DECAY1) * g[k + 1];
+                v[k] = DECAY2 * v[k] + (1 - DECAY2) * g[k + 1] * g[k + 1];
+                double mHat = m[k] / (1 - pow(DECAY1, t)),
+                    vHat = v[k] / (1 - pow(DECAY2, t));
+                weights[k] -= RATE * mHat / (sqrt(vHat) + EPSILON);
+            }
+        }
+        int[] rounded = new int[NUM_FEATURES];
+        for (int k = 0; k < NUM_FEATURES; k += 1) {
+            rounded[k] = (int) Math.round(weights[k]);
+        }
+        System.out.printf("final error %.6f%n",
+                          errorAndGradient(weights, scale)[0]);
+        return new Evaluation(rounded);
+    }
+
+    /** Return the scale K that minimizes the error of WEIGHTS, found by a
+     *  ternary search over log K. */
+    private double fitScale(double[] weights) {
+        double lo = log(MIN_SCALE), hi = log(MAX_SCALE);
+        for (int i = 0; i < SCALE_STEPS; i += 1) {
+            double a = (2 * lo + hi) / 3, b = (lo + 2 * hi) / 3;
+            if (errorAndGradient(weights, exp(a))[0]
+                < errorAndGradient(weights, exp(b))[0]) {
+                hi = b;
+            } else {
+                lo = a;
+            }
+        }
+        return exp((lo + hi) / 2);
+    }
+
+    /** Return an array containing the mean squared error of WEIGHTS with
+     *  scale SCALE over my positions, followed by its gradient with
+     *  respect to each weight.  The work is divided among my pool. */
+    private double[] errorAndGradient(double[] weights, double scale) {
+        List<Callable<double[]>> slices = new ArrayList<>();
+        for (int s = 0; s < _slices; s += 1) {
+            int start = (int) ((long) _size * s / _slices),
+                end = (int) ((long) _size * (s + 1) / _slices);
+            slices.add(() -> errorAndGradient(weights, scale, start, end));
+        }
+        double[] result = new double[NUM_FEATURES + 1];
+        try {
+            for (Future<double[]> part : _pool.invokeAll(slices)) {
+                double[] sums = part.get();
+                for (int k = 0; k < result.length; k += 1) {
+                    result[k] += sums[k] / _size;
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+        return result;
+    }
+
+    /** As for errorAndGradient(WEIGHTS, SCALE), but returns sums rather
+     *  than means, over positions START to END - 1 only. */
+    private double[] errorAndGradient(double[] weights, double scale,
+                                      int start, int end) {
+        double[] sums = new double[NUM_FEATURES + 1];
+        for (int i = start; i < end; i += 1) {
+            int base = i * NUM_FEATURES;
+            double score = 0;
+            for (int k = 0; k < NUM_FEATURES; k += 1) {
+                score += weights[k] * _features[base + k];
+            }
+            double predicted = 1 / (1 + exp(-scale * score)),
+                diff = _results[i] - predicted;
+            sums[0] += diff * diff;
+            double factor = -2 * diff * predicted * (1 - predicted) * scale;
+            for (int k = 0; k < NUM_FEATURES; k += 1) {
+                sums[k + 1] += factor * _features[base + k];
+            }
+        }
+        return sums;
+    }
+
+    /** Number of evaluation features. */
+    private static final int NUM_FEATURES = Evaluation.FEATURES.size();
+
+    /** Initial capacity for positions. */
+    private static final int INIT_POSITIONS = 1024;
+
+    /** Pool on which games are played and the error is computed. */
+    private final ExecutorService _pool;
+    /** Number of parts into which error computations are divided. */
+    private final int _slices;
+    /** Number of positions collected. */
+    private int _size;
+    /** Features of the positions, NUM_FEATURES per position. */
+    private int[] _features = new int[INIT_POSITIONS * NUM_FEATURES];
+    /** Outcome of the game of each position: 1 if White won, else 0. */
+    private double[] _results = new double[INIT_POSITIONS];
+}
@@ -7,7 +7,25 @@ import static org.junit.Assert.*;
 
 import ucb.junit.textui;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 /**
  * The suite of all JUnit tests for the enigma package.
@@ -178,6 +196,1138 @@ public class UnitTest {
         assertFalse(iter1.hasNext());
     }
 
+    /**
+     * Tests that the legal-move spliterator produces the same moves as
+     * legalMoves, with exact sizes, however it is split.
+     */
+    @Test
+    public void testLegalMoveSpliterator() {
+        Random random = new Random(7);
+        for (int side : new int[] { 6, 10 }) {
+            Board b = new Board(side);
+            while (b.winner() == null) {
+                List<Move> expected = new ArrayList<>();
+                b.legalMoves().forEachRemaining(expected::add);
+                assertEquals(expected,
+                             b.legalMoveStream().collect(Collectors.toList()));
+                List<Move> parts = new ArrayList<>();
+                splitAll(b.legalMoveSpliterator(b.turn()), random, parts);
+                assertEquals(expected, parts);
+                assertEquals(expected.size(),
+                             b.legalMoveStream().parallel().count());
+                b.makeMove(expected.get(random.nextInt(expected.size())));
+            }
+        }
+        Board b = new Board();
+        long perft2 = 0;
+        for (Move m : Utils.iterable(b.legalMoves())) {
+            b.makeMove(m);
+            for (Move reply : Utils.iterable(b.legalMoves())) {
+                perft2 += 1;
+            }
+            b.undo();
+        }
+        assertEquals(perft2,
+                     b.legalMoveStream().parallel().mapToLong(m -> {
+                         Board next = b.snapshot();
+                         next.makeMove(m);
+                         return next.legalMoveStream().count();
+                     }).sum());
+    }
+
+    /** Add the elements of ITER to RESULT in order, splitting it at
+     *  random (using RANDOM) and checking the sizes of the parts. */
+    private static void splitAll(Spliterator<Move> iter, Random random,
+                                 List<Move> result) {
+        long size = iter.estimateSize();
+        int start = result.size();
+        for (int k = random.nextInt(3); k > 0; k -= 1) {
+            if (!iter.tryAdvance(result::add)) {
+                break;
+            }
+        }
+        Spliterator<Move> prefix = iter.trySplit();
+        if (prefix != null) {
+            splitAll(prefix, random, result);
+            splitAll(iter, random, result);
+        } else {
+            iter.forEachRemaining(result::add);
+        }
+        assertEquals(size, result.size() - start);
+    }
+
+    /**
+     * Tests the Elo and SPRT statistics reported by Tournament.
+     */
+    @Test
+    public void testTournamentStatistics() {
+        assertEquals(0.0, Tournament.elo(0.5), 1e-9);
+        assertEquals(0.5, Tournament.expectedScore(0), 1e-9);
+        assertEquals(100.0, Tournament.elo(Tournament.expectedScore(100)),
+                1e-6);
+        assertTrue(Tournament.llr(60, 40, 0, 20) > 0);
+        assertTrue(Tournament.llr(40, 60, 0, 20) < 0);
+    }
+
+    /**
+     * Tests that a game played by Controller.playOut is abandoned, with
+     * its search stopped, once its cancel token is set.
+     */
+    @Test
+    public void testCancelPlayOut() throws InterruptedException {
+        AI engine = new AI(false);
+        engine.setClock(TimeManager.parse("60/600"));
+        Controller control =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new TextPlayer(), engine);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException excp) {
+                /* Cancel at once. */
+            }
+            cancelled.set(true);
+        });
+        long start = System.nanoTime();
+        canceller.start();
+        assertNull(control.playOut(engine, engine, cancelled));
+        canceller.join();
+        assertTrue(System.nanoTime() - start < 10_000_000_000L);
+        assertNull(control.board().winner());
+        assertNull(control.playOut(engine, engine, cancelled));
+    }
+
+    /**
+     * Tests that games written by GameLogWriter are read back by
+     * GameLogReader.
+     */
+    @Test
+    public void testBinaryGameLog() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GameLogWriter writer = new GameLogWriter(out);
+        writer.startGame(42, 10, "AI(split)", "TextPlayer");
+        writer.move(Move.mv("d1-d7(g7)"), 1234, 3);
+        writer.move(Move.mv("a7-b7(b8)"), 0, 0);
+        writer.endGame(WHITE);
+        writer.startGame(43, 6, "A", "B");
+        writer.close();
+
+        GameLogReader reader =
+            new GameLogReader(new ByteArrayInputStream(out.toByteArray()));
+        Board b = new Board();
+        assertTrue(reader.nextGame(b));
+        assertEquals(42, reader.seed());
+        assertEquals("AI(split)", reader.white());
+        assertEquals(2, reader.numMoves());
+        assertEquals(1234, reader.moveNodes(0));
+        assertEquals(3, reader.moveDepth(0));
+        assertEquals(WHITE, reader.winner());
+        assertEquals(WHITE, b.get(3, 6));
+        assertEquals(SPEAR, b.get(1, 7));
+        assertTrue(reader.nextGame(b));
+        assertEquals(0, reader.numMoves());
+        assertEquals(6, b.size());
+        assertNull(reader.winner());
+        assertFalse(reader.nextGame(b));
+    }
+
+    /**
+     * Tests that a failure to write the binary log is raised by the next
+     * record written, and by close.
+     */
+    @Test
+    public void testBinaryLogFailure() throws InterruptedException {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk gone");
+            }
+        };
+        GameLogWriter writer = null;
+        try {
+            writer = new GameLogWriter(broken);
+            writer.startGame(42, 10, "A", "B");
+            for (int k = 0; k < 500; k += 1) {
+                writer.move(Move.mv("d1-d7(g7)"), 0, 0);
+                Thread.sleep(10);
+            }
+            fail("failure not reported");
+        } catch (IOException excp) {
+            assertEquals("disk gone", excp.getMessage());
+        }
+        try {
+            writer.close();
+            fail("failure not reported by close");
+        } catch (IOException excp) {
+            assertEquals("disk gone", excp.getMessage());
+        }
+    }
+
+    /**
+     * Tests that the binary log records a game set up by the "setup"
+     * command from its set-up position.
+     */
+    @Test
+    public void testBinaryLogSetup() throws IOException {
+        String setup = "1SB1BS/BS1SSS/S2SS1/1SS2W/BWSSSW/S3WS w";
+        Board expected = new Board();
+        expected.setPosition(setup);
+        StringBuilder script = new StringBuilder();
+        script.append("manual black\nseed 7\nsetup ").append(setup);
+        for (int k = 0; k < 2; k += 1) {
+            Move move = expected.legalMoves().next();
+            expected.makeMove(move);
+            script.append("\n").append(move);
+        }
+        script.append("\nquit\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Controller control =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new TextPlayer(), new TextPlayer(),
+                           new Scanner(script.toString()),
+                           new PrintStream(new ByteArrayOutputStream()));
+        control.setBinaryLog(new GameLogWriter(out));
+        control.play();
+
+        GameLogReader reader =
+            new GameLogReader(new ByteArrayInputStream(out.toByteArray()));
+        Board b = new Board();
+        Board last = null;
+        while (reader.nextGame(b)) {
+            last = b.snapshot();
+        }
+        assertNotNull(last);
+        assertEquals(2, last.numMoves());
+        assertEquals(expected.position(), last.position());
+    }
+
+    /**
+     * Tests that the binary log records the seed and players set by a
+     * script before its first move, rather than those at startup.
+     */
+    @Test
+    public void testBinaryLogHeader() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Controller control =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new TextPlayer(), new AI(),
+                           new Scanner("seed 12345\nmanual black\n"
+                                       + "d1-d7(g7)\nquit\n"),
+                           new PrintStream(new ByteArrayOutputStream()));
+        control.setBinaryLog(new GameLogWriter(out));
+        control.play();
+
+        GameLogReader reader =
+            new GameLogReader(new ByteArrayInputStream(out.toByteArray()));
+        Board b = new Board();
+        assertTrue(reader.nextGame(b));
+        assertEquals(12345, reader.seed());
+        assertEquals("TextPlayer", reader.white());
+        assertEquals("TextPlayer", reader.black());
+        assertEquals(1, reader.numMoves());
+        assertFalse(reader.nextGame(b));
+    }
+
+    /**
+     * Tests conversion of positions to and from text and binary form.
+     */
+    @Test
+    public void testPositionEncoding() {
+        Board b = new Board();
+        assertEquals("3B2B3/10/10/B8B/10/10/W8W/10/10/3W2W3 w",
+                b.position());
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        Board c = new Board();
+        c.setPosition(b.position());
+        assertEquals(b.toString(), c.toString());
+        assertEquals(BLACK, c.turn());
+        assertEquals(0, c.numMoves());
+        c.setPosition(b.position().toLowerCase());
+        assertEquals(b.position(), c.position());
+        Board d = new Board();
+        d.decode(b.encode());
+        assertEquals(b.position(), d.position());
+        try {
+            d.setPosition("3B2B3/10 w");
+            fail("accepted a short position");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(b.position(), d.position());
+        }
+        for (byte turn : new byte[] { 0, 3, -1, 100 }) {
+            byte[] data = b.encode();
+            data[data.length - 1] = turn;
+            try {
+                d.decode(data);
+                fail("accepted a bad turn");
+            } catch (IllegalArgumentException excp) {
+                assertEquals("bad encoded position", excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tests that Moves are unique and print and parse consistently.
+     */
+    @Test
+    public void testMoveNames() {
+        assertEquals("j10", Square.sq(99).toString());
+        assertEquals("a10-j1(a10)",
+                     Move.mv(Square.sq(9), Square.sq(90), Square.sq(9))
+                     .toString());
+        Board b = new Board();
+        for (Move m : Utils.iterable(b.legalMoves(WHITE))) {
+            assertTrue(m == Move.mv(m.toString()));
+            assertTrue(m == Move.mv(m.index()));
+            assertTrue(m == Move.mv(m.from() + " " + m.to() + " "
+                                    + m.spear()));
+        }
+    }
+
+    /**
+     * Tests fill lengths in the endgame tablebase and exact scoring of
+     * separated positions, with fresh and with reused scratch space.
+     */
+    @Test
+    public void testTablebase() {
+        Tablebase tb = new Tablebase(Tablebase.generate());
+        assertEquals(0, tb.fillLength(0b1, 0));
+        assertEquals(2, tb.fillLength(0b111, 0));
+        assertEquals(1, tb.fillLength(0b11, 0));
+        assertEquals(0, tb.fillLength(0b101, 0));
+        assertEquals(15, tb.fillLength(0xffff, 0));
+        Board b = new Board();
+        String walled = "10/10/10/10/10/10/10/SSSSSSSSSS/SSSSSSSSSS/";
+        b.setPosition(walled + "W1B1SSSSSS w");
+        assertEquals(Tablebase.UNKNOWN, tb.probe(b, 1000));
+        b.setPosition(walled + "W1SB2SSSS w");
+        assertEquals(-1000 - 1, tb.probe(b, 1000));
+        b.setPosition(walled + "W2SB1SSSS w");
+        assertEquals(1000 + 1, tb.probe(b, 1000));
+        Tablebase.Scratch scratch = new Tablebase.Scratch();
+        for (int i = 0; i < 6; i += 1) {
+            String row = new String[] {
+                "W2SB1SSSS", "W1B1SSSSSS", "W1SB2SSSS" }[i % 3];
+            b.setPosition(walled + row + " w");
+            assertEquals(tb.probe(b, 1000), tb.probe(b, 1000, scratch));
+        }
+    }
+
+    /**
+     * Tests boards smaller than the standard size, and the bitboard
+     * operations used for them.
+     */
+    @Test
+    public void testSmallBoard() {
+        Board b = new Board(6);
+        assertEquals("1B2B1/B4B/6/6/W4W/1W2W1 w", b.position());
+        assertFalse(b.isLegal(Move.mv("b1-b7(b8)")));
+        int moves = 0;
+        for (Iterator<Move> iter = b.legalMoves(); iter.hasNext();) {
+            Square to = iter.next().to();
+            assertTrue(b.onBoard(to));
+            moves += 1;
+        }
+        assertTrue(moves > 0);
+        int reachable = 0;
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            if (b.get(Square.sq(i)) == WHITE) {
+                Iterator<Square> iter = b.reachableFrom(Square.sq(i), null);
+                for (; iter.hasNext(); iter.next()) {
+                    reachable += 1;
+                }
+            }
+        }
+        assertEquals(reachable, Bitboard.mobility(b, WHITE));
+        b.setPosition("WS4/SS4/6/6/6/4B1 b");
+        assertTrue(b.hasMove(BLACK));
+        assertFalse(b.hasMove(WHITE));
+        b.makeMove(Move.mv("e1-f1(e1)"));
+        assertEquals(BLACK, b.winner());
+    }
+
+    /**
+     * Tests that the legal-move iterator finds moves exactly when hasMove
+     * does, so that play never reaches a position with no winner and no
+     * moves, and that every move it produces is legal.
+     */
+    @Test
+    public void testLegalMovesToEnd() {
+        for (int game = 0; game < 40; game += 1) {
+            Board b = new Board(Board.MIN_SIZE + game % 7);
+            for (int ply = 0; b.winner() == null; ply += 1) {
+                List<Move> moves = new ArrayList<>();
+                for (Iterator<Move> iter = b.legalMoves(); iter.hasNext();) {
+                    Move m = iter.next();
+                    assertTrue(b.isLegal(m));
+                    moves.add(m);
+                }
+                assertFalse(moves.isEmpty());
+                b.makeMove(moves.get((game * 31 + ply * 17) % moves.size()));
+            }
+            assertFalse(b.hasMove(b.turn()));
+            assertFalse(b.legalMoves().hasNext());
+        }
+        Board b = new Board();
+        b.setPosition("9W/10/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/"
+                      + "SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/BSSSSSSSSS w");
+        assertNull(b.winner());
+        Iterator<Move> iter = b.legalMoves();
+        assertTrue(iter.hasNext());
+        assertEquals(Square.sq("j10"), iter.next().from());
+    }
+
+    /**
+     * Tests that the time manager keeps its budgets within the limits,
+     * giving each side half the game limit, and charges a move from its
+     * start.
+     */
+    @Test
+    public void testTimeManager() {
+        TimeManager clock = TimeManager.parse("10/60");
+        clock.startMove(new Board());
+        assertTrue(clock.hardLimit() <= 10000);
+        assertTrue(clock.softLimit() <= clock.hardLimit());
+        assertTrue(clock.softLimit() < 60000 / 10);
+        assertTrue(clock.keepSearching(false));
+        assertFalse(clock.outOfTime());
+        clock.endMove();
+        assertTrue(clock.remaining() <= 60000);
+        assertTrue(clock.remaining() <= 30000);
+        clock.startMove(new Board(), System.nanoTime() - 2000000000L);
+        assertTrue(clock.elapsed() >= 2000);
+        clock.endMove();
+        assertTrue(clock.remaining() <= 28000);
+        try {
+            TimeManager.parse("10");
+            fail("accepted bad time limits");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /**
+     * Tests that the amazon lists follow puts, moves, and undos.
+     */
+    @Test
+    public void testAmazonLists() {
+        Board b = new Board();
+        assertEquals(4, b.numAmazons(WHITE));
+        assertEquals(Square.sq("a4"), b.amazon(WHITE, 0));
+        assertEquals(Square.sq("j4"), b.amazon(WHITE, 3));
+        b.makeMove(Move.mv("a4-h4(a4)"));
+        assertEquals(Square.sq("d1"), b.amazon(WHITE, 0));
+        assertEquals(Square.sq("h4"), b.amazon(WHITE, 2));
+        b.undo();
+        assertEquals(Square.sq("a4"), b.amazon(WHITE, 0));
+        b.put(EMPTY, Square.sq("j4"));
+        b.put(WHITE, Square.sq("j10"));
+        assertEquals(Square.sq("j10"), b.amazon(WHITE, 3));
+        int fromCorner = 0;
+        for (Iterator<Move> iter = b.legalMoves(WHITE); iter.hasNext();) {
+            if (iter.next().from() == Square.sq("j10")) {
+                fromCorner += 1;
+            }
+        }
+        assertTrue(fromCorner > 0);
+        b.put(EMPTY, Square.sq("a7"));
+        b.put(SPEAR, Square.sq("d10"));
+        assertEquals(2, b.numAmazons(BLACK));
+        assertEquals(Square.sq("j7"), b.amazon(BLACK, 1));
+    }
+
+    /**
+     * Tests that listeners follow the moves, undos and resets of a board,
+     * but not of its copies, until removed, and that they share the
+     * threads that deliver changes.
+     */
+    @Test
+    public void testBoardListener() {
+        Board b = new Board();
+        Piece[] shown = new Piece[Board.SIZE * Board.SIZE];
+        List<BoardChange.Kind> kinds = new ArrayList<>();
+        BoardListener listener = changes -> {
+            for (BoardChange change : changes) {
+                change.applyTo(shown);
+                kinds.add(change.kind());
+            }
+        };
+        b.addListener(listener);
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        b.makeMove(Move.mv("a7-b7(a7)"));
+        b.undo();
+        b.makeMove(Move.mv("g10-g8(d5)"));
+        Board c = b.snapshot();
+        c.makeMove(Move.mv("g1-g3(g2)"));
+        b.removeListener(listener);
+        b.makeMove(Move.mv("g1-g3(g2)"));
+        assertEquals(BoardChange.Kind.RESET, kinds.get(0));
+        b.undo();
+        for (int i = 0; i < shown.length; i += 1) {
+            assertEquals(b.get(Square.sq(i)), shown[i]);
+        }
+
+        kinds.clear();
+        b.addListener(listener);
+        b.setPosition("1SB1BS/BS1SSS/S2SS1/1SS2W/BWSSSW/S3WS w");
+        b.removeListener(listener);
+        assertEquals(BoardChange.Kind.RESET, kinds.get(kinds.size() - 1));
+        for (int i = 0; i < shown.length; i += 1) {
+            assertEquals(b.get(Square.sq(i)), shown[i]);
+        }
+
+        for (int k = 0; k < 100; k += 1) {
+            Board d = new Board();
+            d.addListener(listener);
+            d.makeMove(Move.mv("d1-d7(g7)"));
+            d.removeListener(listener);
+        }
+        int deliverers = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("board listener")) {
+                deliverers += 1;
+            }
+        }
+        assertTrue(deliverers < 10);
+    }
+
+    /**
+     * Tests that copies carry the move history and leave the original
+     * alone.
+     */
+    @Test
+    public void testSnapshot() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        b.makeMove(Move.mv("a7-b7(c7)"));
+        Board c = b.snapshot();
+        assertEquals(2, b.numMoves());
+        assertEquals(2, c.numMoves());
+        assertEquals(Move.mv("a7-b7(c7)"), c.lastMove());
+        assertEquals(Move.mv("d1-d7(g7)"), c.move(0));
+        c.undo();
+        assertEquals(Move.mv("a7-b7(c7)"), b.lastMove());
+        assertEquals(BLACK, b.get(Square.sq("b7")));
+        assertEquals(BLACK, c.get(Square.sq("a7")));
+        c.undo();
+        c.undo();
+        assertEquals(0, c.numMoves());
+        assertNull(c.lastMove());
+        assertEquals(new Board().position(), c.position());
+    }
+
+    /**
+     * Tests that a command from a polling user cancels a running AI
+     * search at once.
+     */
+    @Test
+    public void testCancelSearch() {
+        Controller control =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new ScriptedPlayer(), new AI());
+        long start = System.currentTimeMillis();
+        control.play();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(0, control.board().numMoves());
+    }
+
+    /**
+     * A manual player that switches White to the AI, and then (from
+     * pollCommand, while the AI thinks) quits.
+     */
+    private static class ScriptedPlayer extends Player {
+        /** A template player. */
+        ScriptedPlayer() {
+            super(null, null);
+        }
+
+        @Override
+        Player create(Piece piece, Controller controller) {
+            return this;
+        }
+
+        @Override
+        String myMove() {
+            return "auto white";
+        }
+
+        @Override
+        boolean canPoll() {
+            return true;
+        }
+
+        @Override
+        String pollCommand() {
+            _polls += 1;
+            return _polls < 4 ? null : "quit";
+        }
+
+        /** Number of calls to pollCommand. */
+        private int _polls;
+    }
+
+    /**
+     * Tests that a move sent while the AI searches is dropped, rather than
+     * played (or rejected) in the position after the AI's move.
+     */
+    @Test
+    public void testMoveDuringSearch() {
+        AI engine = new AI();
+        engine.setClock(TimeManager.parse("0.5/5"));
+        int[] errors = new int[1];
+        Reporter reporter = new NullReporter() {
+            @Override
+            public void reportError(String fmt, Object... args) {
+                errors[0] += 1;
+            }
+        };
+        Controller control =
+            new Controller(new NullView(), null, reporter,
+                           new PollingPlayer(), engine);
+        control.play();
+        assertEquals(2, control.board().numMoves());
+        assertEquals(0, errors[0]);
+    }
+
+    /**
+     * A manual player that makes one move, sends another while the AI
+     * replies, and then quits.
+     */
+    private static class PollingPlayer extends Player {
+        /** A template player. */
+        PollingPlayer() {
+            super(null, null);
+        }
+
+        @Override
+        Player create(Piece piece, Controller controller) {
+            return this;
+        }
+
+        @Override
+        String myMove() {
+            _moves += 1;
+            return _moves == 1 ? "d1-d7(g7)" : "quit";
+        }
+
+        @Override
+        boolean canPoll() {
+            return true;
+        }
+
+        @Override
+        String pollCommand() {
+            _polls += 1;
+            return _polls == 1 ? "g1-g2(g3)" : null;
+        }
+
+        /** Number of calls to myMove. */
+        private int _moves;
+        /** Number of calls to pollCommand. */
+        private int _polls;
+    }
+
+    /**
+     * Tests that each new game, whether begun by "new", "size" or
+     * "setup", gets new players, so that no clock carries over from the
+     * last game.
+     */
+    @Test
+    public void testNewGamePlayers() {
+        CountingPlayer template = new CountingPlayer();
+        Controller control =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new TextPlayer(), template,
+                           new Scanner("new\nsize 8\nsetup 8/8/8/8/8/8/8/W6B"
+                                       + " w\nquit\n"),
+                           new PrintStream(new ByteArrayOutputStream()));
+        control.play();
+        assertEquals(4, template._created);
+    }
+
+    /**
+     * An automated player that counts the players created from it, and
+     * never has to move.
+     */
+    private static class CountingPlayer extends Player {
+        /** A template player. */
+        CountingPlayer() {
+            super(null, null);
+        }
+
+        /** A player of PIECE created from TEMPLATE for CONTROLLER. */
+        CountingPlayer(Piece piece, Controller controller,
+                       CountingPlayer template) {
+            super(piece, controller);
+            _template = template;
+        }
+
+        @Override
+        Player create(Piece piece, Controller controller) {
+            CountingPlayer template = _template == null ? this : _template;
+            template._created += 1;
+            return new CountingPlayer(piece, controller, template);
+        }
+
+        @Override
+        String myMove() {
+            return "quit";
+        }
+
+        /** The template I was created from, or null if I am one. */
+        private CountingPlayer _template;
+        /** Number of players created from me, if I am a template. */
+        private int _created;
+    }
+
+    /**
+     * Tests that split-ply search chooses a forced win, which it must
+     * rank above moves with ordinary scores.
+     */
+    @Test
+    public void testSplitPlyWin() {
+        AI engine = new AI(true);
+        engine.setClock(TimeManager.parse("0.5/5"));
+        Controller control =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new TextPlayer(), engine);
+        control.board().setPosition(
+            "BWSSSB/SSSSWB/SSSS1S/1SS1SS/WSSBSW/SS1SS1 b");
+        String move = engine.create(BLACK, control).myMove();
+        assertTrue(List.of("d2-d3(e4)", "f5-e4(f5)").contains(move));
+    }
+
+    /**
+     * Tests that analysis reports the best few moves, best first, after
+     * each iteration.
+     */
+    @Test
+    public void testAnalyze() {
+        Board b = new Board(6);
+        AI engine = new AI(true);
+        engine.setClock(TimeManager.parse("0.5/5"));
+        List<List<Variation>> reports = new ArrayList<>();
+        List<Variation> lines = engine.analyze(b, 3, reports::add);
+        assertFalse(reports.isEmpty());
+        assertEquals(lines, reports.get(reports.size() - 1));
+        assertEquals(3, lines.size());
+        for (int i = 0; i < lines.size(); i += 1) {
+            assertTrue(b.isLegal(lines.get(i).move()));
+            if (i > 0) {
+                assertTrue(lines.get(i - 1).score() >= lines.get(i).score());
+            }
+        }
+        assertEquals(0, b.numMoves());
+    }
+
+    /**
+     * Tests that full-width search chooses a forced win, rather than a
+     * later move whose score is only a bound equal to the win's.
+     */
+    @Test
+    public void testFullWidthWin() {
+        AI engine = new AI(false);
+        engine.setClock(TimeManager.parse("0.5/5"));
+        Controller control =
+            new Controller(new NullView(), null, new NullReporter(),
+                           new TextPlayer(), engine);
+        control.board().setPosition(
+            "SSS1S1/1SBWSB/BSSSSS/SBSSS1/W1SSWS/1SWS1S b");
+        String move = engine.create(BLACK, control).myMove();
+        assertTrue(List.of("b3-b2(b3)", "b3-b2(a1)").contains(move));
+    }
+
+    /**
+     * Tests that analysis ranks a forced win first.
+     */
+    @Test
+    public void testAnalyzeWin() {
+        Board b = new Board();
+        b.setPosition("BWSSSB/SSSSWB/SSSS1S/1SS1SS/WSSBSW/SS1SS1 b");
+        AI engine = new AI(false);
+        engine.setClock(TimeManager.parse("0.5/5"));
+        List<Variation> lines = engine.analyze(b, 1, reports -> { });
+        assertTrue(List.of(Move.mv("d2-d3(e4)"), Move.mv("f5-e4(f5)"))
+                   .contains(lines.get(0).move()));
+    }
+
+    /**
+     * Tests that analysis keeps an iteration whose search completed even
+     * when its node limit runs out while it is following the principal
+     * variations, reporting those variations as far as they go.
+     */
+    @Test
+    public void testAnalyzeTruncatedLine() {
+        boolean truncated = false;
+        for (long limit = 256; limit <= 12288; limit += 256) {
+            Board b = new Board(6);
+            AI engine = new AI(false);
+            engine.setClock(TimeManager.parse("100/5"));
+            engine.setNodeLimit(limit);
+            List<List<Variation>> reports = new ArrayList<>();
+            List<Variation> lines = engine.analyze(b, 1, reports::add);
+            assertEquals(engine.lastDepth(), reports.size());
+            assertEquals(lines, reports.get(reports.size() - 1));
+            assertTrue(b.isLegal(lines.get(0).move()));
+            truncated |= lines.get(0).moves().size() < engine.lastDepth();
+        }
+        assertTrue(truncated);
+    }
+
+    /**
+     * Tests that the evaluation cache returns what was stored, counts its
+     * hits and misses, and is used and shared by an AI's searches.
+     */
+    @Test
+    public void testEvalCache() {
+        EvalCache cache = new EvalCache(4);
+        long hash = 0x123456789abcdef0L, other = hash ^ (1L << 40);
+        assertEquals(EvalCache.MISS, cache.probe(hash));
+        assertEquals(EvalCache.MISS, cache.probe(0));
+        cache.store(hash, -1234);
+        assertEquals(-1234, cache.probe(hash));
+        assertEquals(EvalCache.MISS, cache.probe(other));
+        cache.store(other, 0);
+        assertEquals(0, cache.probe(other));
+        assertEquals(EvalCache.MISS, cache.probe(hash));
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+        cache.clear();
+        assertEquals(0, cache.hits() + cache.misses());
+        assertEquals(EvalCache.MISS, cache.probe(other));
+
+        AI engine = new AI(true);
+        engine.setClock(TimeManager.parse("0.2/5"));
+        AI player = (AI) engine.create(WHITE, null);
+        assertTrue(player.evalCache() == engine.evalCache());
+        player.analyze(new Board(6), 1, lines -> { });
+        assertTrue(engine.evalCache().hits() > 0);
+        engine.setEvaluation(Evaluation.DEFAULT);
+        assertEquals(0, engine.evalCache().hits());
+    }
+
+    /**
+     * Tests that hashes follow positions rather than histories, and that
+     * the transposition table returns what was stored.
+     */
+    @Test
+    public void testHashAndContext() {
+        Board b = new Board(), c = new Board();
+        long start = b.hash();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        assertTrue(start != b.hash());
+        b.makeMove(Move.mv("a7-b7(c7)"));
+        b.makeMove(Move.mv("g1-g4(g3)"));
+        c.makeMove(Move.mv("g1-g4(g3)"));
+        c.makeMove(Move.mv("a7-b7(c7)"));
+        c.makeMove(Move.mv("d1-d7(g7)"));
+        assertEquals(b.position(), c.position());
+        assertEquals(b.hash(), c.hash());
+        assertEquals(b.hash(), b.snapshot().hash());
+        b.undo();
+        b.undo();
+        b.undo();
+        assertEquals(start, b.hash());
+        c.setPosition(c.position());
+        assertEquals(c.hash(), c.snapshot().hash());
+
+        EngineContext context = new EngineContext(4);
+        assertEquals(EngineContext.NONE, context.probe(start));
+        Move m = Move.mv("d1-d7(g7)");
+        context.store(start, 3, EngineContext.LOWER, -17, m);
+        long entry = context.probe(start);
+        assertEquals(3, EngineContext.depth(entry));
+        assertEquals(EngineContext.LOWER, EngineContext.bound(entry));
+        assertEquals(-17, EngineContext.score(entry));
+        assertEquals(m, EngineContext.move(entry));
+        context.store(start, 1, EngineContext.EXACT, 5, null);
+        assertEquals(3, EngineContext.depth(context.probe(start)));
+        context.store(start ^ 16, 2, EngineContext.EXACT, 5, null);
+        assertEquals(EngineContext.NONE, context.probe(start));
+        context.store(start, 3, EngineContext.LOWER, -17, m);
+        context.newSearch(10);
+        context.newSearch(0);
+        assertEquals(entry, context.probe(start));
+        context.store(start, 1, EngineContext.EXACT, 5, null);
+        assertEquals(1, EngineContext.depth(context.probe(start)));
+        context.clear();
+        assertEquals(EngineContext.NONE, context.probe(start));
+        assertEquals(16 * EngineContext.ENTRY_BYTES, context.tableBytes());
+        assertEquals(1 << 20, EngineContext.ofMegabytes(1).tableBytes());
+    }
+
+    /**
+     * Tests that a transposition table mapped from a file keeps its
+     * entries from one mapping to the next, unless the scores of the
+     * next come from a different evaluation.
+     */
+    @Test
+    public void testHashFile() throws IOException {
+        Path file = Files.createTempFile("amazons", ".tt");
+        try {
+            long hash = new Board().hash();
+            Move m = Move.mv("d1-d7(g7)");
+            EngineContext context = EngineContext.map(file, 6, 1);
+            assertEquals(EngineContext.NONE, context.probe(hash));
+            context.store(hash, 4, EngineContext.EXACT, 33, m);
+            long entry = context.probe(hash);
+            context.save();
+            assertEquals((16 << 6) + 16, Files.size(file));
+
+            context = EngineContext.map(file, 10, 1);
+            assertEquals(64 * EngineContext.ENTRY_BYTES,
+                         context.tableBytes());
+            assertEquals(entry, context.probe(hash));
+            assertEquals(m, EngineContext.move(context.probe(hash)));
+
+            context = EngineContext.map(file, 10, 2);
+            assertEquals(64 * EngineContext.ENTRY_BYTES,
+                         context.tableBytes());
+            assertEquals(EngineContext.NONE, context.probe(hash));
+            context.store(hash, 4, EngineContext.EXACT, 33, m);
+            context.save();
+            context = EngineContext.map(file, 6, 2);
+            assertEquals(entry, context.probe(hash));
+
+            AI engine = new AI();
+            int fingerprint = engine.fingerprint();
+            engine.setEvaluation(new Evaluation(16, 0, 0));
+            assertEquals(fingerprint, engine.fingerprint());
+            engine.setEvaluation(new Evaluation(16, 1, 0));
+            assertNotEquals(fingerprint, engine.fingerprint());
+
+            Files.write(file, new byte[] { 1, 2, 3 });
+            try {
+                EngineContext.map(file, 6, 1);
+                fail("accepted a file that is not a table");
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Tests the evaluation features and the weights file format.
+     */
+    @Test
+    public void testEvaluation() throws IOException {
+        for (int side : new int[] { 6, 10 }) {
+            Board b = new Board(side);
+            b.makeMove(b.legalMoves().next());
+            int[] features = new int[Evaluation.FEATURES.size()];
+            Evaluation.features(b, features);
+            int white = 0, black = 0;
+            for (int k = 0; k < 4; k += 1) {
+                Iterator<Square> iter =
+                    b.reachableFrom(b.amazon(WHITE, k), null);
+                for (; iter.hasNext(); iter.next()) {
+                    white += 1;
+                }
+                iter = b.reachableFrom(b.amazon(BLACK, k), null);
+                for (; iter.hasNext(); iter.next()) {
+                    black += 1;
+                }
+            }
+            assertEquals(white - black, features[0]);
+            assertEquals(0, features[2]);
+            assertEquals(16 * (white - black), Evaluation.DEFAULT.score(b));
+        }
+        Path file = Files.createTempFile("amazons", ".weights");
+        try {
+            new Evaluation(3, -2, 40).save(file);
+            Evaluation loaded = Evaluation.load(file);
+            assertEquals(3, loaded.weight(0));
+            assertEquals(-2, loaded.weight(1));
+            assertEquals(40, loaded.weight(2));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Tests a search divided among workers listening on Unix-domain
+     * sockets, and that it chooses a forced win.
+     */
+    @Test
+    public void testSearchCluster() throws IOException {
+        Path dir = Files.createTempDirectory("amazons");
+        List<SearchWorker> workers = new ArrayList<>();
+        List<String> addresses = new ArrayList<>();
+        try {
+            for (int k = 0; k < 2; k += 1) {
+                String address = dir.resolve("worker" + k).toString();
+                SearchWorker worker =
+                    new SearchWorker(Server.open(address), 10,
+                                     Evaluation.DEFAULT);
+                Thread thread = new Thread(worker::serve);
+                thread.setDaemon(true);
+                thread.start();
+                workers.add(worker);
+                addresses.add(address);
+            }
+            Board b = new Board(6);
+            List<Integer> moves = new ArrayList<>();
+            int expected = -AI.INFTY;
+            for (Move m : Utils.iterable(b.legalMoves())) {
+                moves.add(m.index());
+                b.makeMove(m);
+                expected = Math.max(expected, Evaluation.DEFAULT.score(b));
+                b.undo();
+            }
+            int[] roots = moves.stream().mapToInt(i -> i).toArray();
+            int[] scores = new int[roots.length];
+            int value;
+            try (SearchCluster cluster = SearchCluster.connect(addresses)) {
+                int best = cluster.search(b, 1, false, roots, scores,
+                                          () -> false);
+                assertEquals(expected, scores[best]);
+                assertTrue(cluster.lastNodes() >= roots.length);
+                best = cluster.search(b, 2, true, roots, scores,
+                                      () -> false);
+                value = scores[best];
+                assertEquals(-1, cluster.search(b, 6, false, roots,
+                                                scores, () -> true));
+            }
+            try (SearchCluster single =
+                 SearchCluster.connect(addresses.subList(1, 2))) {
+                int best = single.search(b, 2, true, roots, scores,
+                                         () -> false);
+                assertEquals(value, scores[best]);
+            }
+            Board end = new Board();
+            end.setPosition("S1SSWB/BSSSSS/1SS1SB/S1SSSS/WBSSSW/SSSWS1 b");
+            List<Move> wins =
+                List.of(Move.mv("a5-a4(b3)"), Move.mv("b2-b3(b2)"));
+            moves.clear();
+            for (Move m : Utils.iterable(end.legalMoves())) {
+                moves.add(m.index());
+            }
+            int[] endRoots = moves.stream().mapToInt(i -> i).toArray();
+            try (SearchCluster cluster = SearchCluster.connect(addresses)) {
+                for (int depth = 1; depth <= 3; depth += 1) {
+                    int best = cluster.search(end, depth, false, endRoots,
+                                              new int[endRoots.length],
+                                              () -> false);
+                    assertTrue(wins.contains(Move.mv(endRoots[best])));
+                }
+            }
+        } finally {
+            for (SearchWorker worker : workers) {
+                worker.close();
+            }
+            for (String address : addresses) {
+                Files.deleteIfExists(Path.of(address));
+            }
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Tests the benchmark runner on endgames whose only winning moves are
+     * known.
+     */
+    @Test
+    public void testBenchmark() throws IOException {
+        Path suite = Files.createTempFile("amazons", ".suite");
+        Path results = Files.createTempFile("amazons", ".results");
+        try {
+            Files.write(suite, List.of(
+                "# Test suite",
+                "end8 S3SSWS/SSSSSBSS/SS1SSSSB/SBSSBS2/1SSSSSSS/SWSSSS1S"
+                + "/SS1SSSWS/S2SWSS1 w b3-c2(a4)",
+                "end6 1SB3/B1BSS1/SSSSWS/S1SWB1/1SWS1S/1S1SWS w"
+                + " e4-f5(f6) e4-f5(e4) e4-f5(e6)",
+                "",
+                "open 2B2B2/8/B6B/8/8/W6W/8/2W2W2 w"));
+            for (boolean split : new boolean[] { false, true }) {
+                Benchmark bench = new Benchmark(new AI(split), 300);
+                ByteArrayOutputStream report = new ByteArrayOutputStream();
+                bench.run(suite, new PrintStream(report));
+                assertTrue(report.toString().contains("solved 2/2"));
+                bench.save(results);
+                report.reset();
+                bench.compare(results, new PrintStream(report));
+                assertTrue(report.toString().contains("Baseline: solved 2/2"));
+            }
+        } finally {
+            Files.delete(suite);
+            Files.delete(results);
+        }
+    }
+
+    /**
+     * Tests that positions related by a symmetry of the board have the
+     * same canonical hash, and that moves map back correctly.
+     */
+    @Test
+    public void testSymmetry() {
+        for (int side : new int[] { 6, 10 }) {
+            Board b = new Board(side);
+            Move m = b.legalMoves().next();
+            b.makeMove(m);
+            Board mirror = new Board(side);
+            mirror.makeMove(Symmetry.apply(4, m, side));
+            assertEquals(b.canonicalHash(), mirror.canonicalHash());
+            for (int sym = 1; sym < Symmetry.NUM; sym += 1) {
+                Board c = new Board(b);
+                for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+                    Square s = Square.sq(i);
+                    c.put(b.get(s), Symmetry.apply(sym, s, side));
+                }
+                assertEquals(b.canonicalHash(), c.canonicalHash());
+                Move image = Symmetry.apply(sym, m, side);
+                assertEquals(m, Symmetry.apply(Symmetry.inverse(sym), image,
+                                               side));
+            }
+            b.makeMove(b.legalMoves().next());
+            assertTrue(b.canonicalHash() != new Board(side).canonicalHash());
+        }
+    }
+
+    /**
+     * Tests that a flight recording captures search and command events.
+     */
+    @Test
+    public void testFlightEvents() throws IOException {
+        Path file = Files.createTempFile("amazons", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("amazons.Search");
+            recording.enable("amazons.Iteration");
+            recording.enable("amazons.Command");
+            recording.start();
+            AI engine = new AI(true);
+            engine.setClock(TimeManager.parse("0.2/5"));
+            Controller control =
+                new Controller(new NullView(), null, new NullReporter(),
+                               new TextPlayer(), engine);
+            control.setBoardSize(6);
+            control.playOut(engine, engine);
+            recording.stop();
+            recording.dump(file);
+            int searches = 0, iterations = 0, moves = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                switch (event.getEventType().getName()) {
+                case "amazons.Search":
+                    searches += 1;
+                    break;
+                case "amazons.Iteration":
+                    iterations += 1;
+                    break;
+                default:
+                    moves += event.getString("type").equals("move") ? 1 : 0;
+                    break;
+                }
+            }
+            assertEquals(control.board().numMoves(), searches);
+            assertEquals(searches, moves);
+            assertTrue(iterations >= searches);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     /**
      * Tests toString for initial board state and a smiling board state. :)
      */
@@ -0,0 +1,51 @@
+package amazons;
+
+import java.util.Collections;
+import java.util.List;
+
+/** A line of play found by analysis: a sequence of moves starting from
+ *  the analyzed position, and the value of that position if the first
+ *  move is played (positive values favor White).
+ *  @author Dayuan Tang
+ */
+final class Variation {
+
+    /** A variation consisting of MOVES (at least one), whose first move
+     *  gives the position the value SCORE. */
+    Variation(int score, List<Move> moves) {
+        _score = score;
+        _moves = Collections.unmodifiableList(moves);
+    }
+
+    /** Return the value of the analyzed position after my first move. */
+    int score() {
+        return _score;
+    }
+
+    /** Return my first move. */
+    Move move() {
+        return _moves.get(0);
+    }
+
+    /** Return my moves, in order. */
+    List<Move> moves() {
+        return _moves;
+    }
+
+    /** Returns my score followed by my moves, as in
+     *  "+12 d1-d7(g7) a7-b7(c7)". */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(_score >= 0 ? "+" : "").append(_score);
+        for (Move m : _moves) {
+            result.append(' ').append(m);
+        }
+        return result.toString();
+    }
+
+    /** Value of the analyzed position after my first move. */
+    private final int _score;
+    /** My moves. */
+    private final List<Move> _moves;
+}
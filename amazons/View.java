@@ -1,10 +1,7 @@
 package amazons;
 
-/** A view of an Amazons board.
+/** A view of an Amazons board, which follows the board's changes (see
+ *  Board.addListener).
  *  @author P. N. Hilfinger */
-interface View {
-
-    /** Update the current view according to BOARD. */
-    void update(Board board);
-
+interface View extends BoardListener {
 }